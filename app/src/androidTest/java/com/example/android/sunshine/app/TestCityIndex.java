@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks the bundled city index is sorted the way the lookups expect, and that suggestions
+    and lookups behave for cities, postal codes and typos.
+ */
+public class TestCityIndex extends AndroidTestCase {
+
+    private CityIndex mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIndex = CityIndex.get(mContext);
+    }
+
+    public void testIndexIsSorted() {
+        assertTrue("Error: The city index is empty, is the asset stored uncompressed?",
+                mIndex.size() > 0);
+        for (int i = 1; i < mIndex.size(); i++) {
+            String previous = mIndex.getCity(i - 1).toLowerCase();
+            String current = mIndex.getCity(i).toLowerCase();
+            assertTrue("Error: " + previous + " should sort before " + current,
+                    previous.compareTo(current) < 0);
+        }
+    }
+
+    public void testSuggestions() {
+        String[] suggestions = new String[4];
+        int count = mIndex.suggest("lond", suggestions);
+        assertEquals("Error: Both Londons should be suggested", 2, count);
+        assertEquals("London,CA", suggestions[0]);
+        assertEquals("London,GB", suggestions[1]);
+
+        assertEquals("Error: The number of suggestions should be capped", 4,
+                mIndex.suggest("s", suggestions));
+        assertEquals("Error: Nothing should start with a typo", 0,
+                mIndex.suggest("lindon", suggestions));
+    }
+
+    public void testKnownLocations() {
+        assertTrue(mIndex.isKnownLocation("London"));
+        assertTrue(mIndex.isKnownLocation("london,gb"));
+        assertTrue(mIndex.isKnownLocation("New York"));
+        assertTrue("Error: Postal codes can't be checked, so should be accepted",
+                mIndex.isKnownLocation("94043"));
+        assertTrue(mIndex.isKnownLocation("SW1A 1AA"));
+
+        assertFalse("Error: A partly typed city should not match",
+                mIndex.isKnownLocation("Lond"));
+        assertFalse(mIndex.isKnownLocation("Lindon"));
+        assertFalse(mIndex.isKnownLocation("London,G"));
+        assertFalse(mIndex.isKnownLocation("London,GBR"));
+    }
+}
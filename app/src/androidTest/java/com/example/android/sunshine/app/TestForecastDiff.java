@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Replays the operations computed by ForecastDiff on a plain list and checks that they turn
+    the old rows into the new ones, touching only what changed.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY = 1000 * 60 * 60 * 24;
+    private static final long FIRST_DATE = 1419033600000L;  // December 20th, 2014
+
+    public void testOnlyChangedRowIsRebound() {
+        List<ForecastRow> oldRows = buildRows(0, 14);
+        List<ForecastRow> newRows = new ArrayList<ForecastRow>(oldRows);
+        ForecastRow tomorrow = oldRows.get(1);
+        newRows.set(1, row(tomorrow.getDate(), tomorrow.getMaxTemp() + 3));
+
+        RecordingCallback callback = replay(oldRows, newRows, true);
+        assertEquals("Error: Changing one high temperature should produce one operation",
+                1, callback.mOperations);
+        assertEquals("Error: Tomorrow's row should have been rebound",
+                1, callback.mLastChanged);
+    }
+
+    public void testIdenticalRowsProduceNoOperations() {
+        List<ForecastRow> rows = buildRows(0, 14);
+        assertEquals("Error: Identical lists should produce no operations",
+                0, ForecastDiff.compute(rows, buildRows(0, 14), true).size());
+    }
+
+    public void testInsertsAndRemovesByDate() {
+        List<ForecastRow> oldRows = buildRows(0, 14);
+        List<ForecastRow> newRows = buildRows(1, 16);
+        replay(oldRows, newRows, false);
+
+        // Reordered input must also be reachable through moves.
+        List<ForecastRow> shuffled = buildRows(0, 5);
+        shuffled.add(0, shuffled.remove(3));
+        replay(buildRows(0, 5), shuffled, false);
+    }
+
+    public void testNewFirstRowIsRebound() {
+        List<ForecastRow> oldRows = buildRows(1, 14);
+        List<ForecastRow> newRows = buildRows(0, 14);
+        newRows.remove(0);
+        newRows.add(0, oldRows.get(3));
+        newRows.remove(4);
+
+        RecordingCallback callback = replay(oldRows, newRows, true);
+        assertTrue("Error: The row moved into the today layout should have been rebound",
+                callback.mChanged.contains(0));
+    }
+
+    // Applies the diff to a copy of oldRows and checks the result matches newRows.
+    private RecordingCallback replay(List<ForecastRow> oldRows, List<ForecastRow> newRows,
+                                     boolean rebindFirstRow) {
+        RecordingCallback callback = new RecordingCallback(oldRows, newRows);
+        ForecastDiff.compute(oldRows, newRows, rebindFirstRow).dispatchTo(callback);
+
+        assertEquals("Error: Replayed list has the wrong size",
+                newRows.size(), callback.mDates.size());
+        for (int i = 0; i < newRows.size(); i++) {
+            assertEquals("Error: Replayed list differs at position " + i,
+                    (Long) newRows.get(i).getDate(), callback.mDates.get(i));
+        }
+        return callback;
+    }
+
+    private static List<ForecastRow> buildRows(int firstDay, int lastDay) {
+        List<ForecastRow> rows = new ArrayList<ForecastRow>();
+        for (int day = firstDay; day < lastDay; day++) {
+            rows.add(row(FIRST_DATE + day * DAY, 20 + day));
+        }
+        return rows;
+    }
+
+    private static ForecastRow row(long date, double high) {
+        return new ForecastRow(date, date, "Clear", high, high - 10, "94043", 800,
+                "37.4", "-122.1");
+    }
+
+    private static class RecordingCallback implements ForecastDiff.Callback {
+        final List<Long> mDates = new ArrayList<Long>();
+        final List<ForecastRow> mNewRows;
+        final List<Integer> mChanged = new ArrayList<Integer>();
+        int mOperations;
+        int mLastChanged = -1;
+
+        RecordingCallback(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+            for (ForecastRow row : oldRows) {
+                mDates.add(row.getDate());
+            }
+            mNewRows = newRows;
+        }
+
+        @Override
+        public void onInserted(int position) {
+            mOperations++;
+            mDates.add(position, mNewRows.get(position).getDate());
+        }
+
+        @Override
+        public void onRemoved(int position) {
+            mOperations++;
+            mDates.remove(position);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mOperations++;
+            mDates.add(toPosition, mDates.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position) {
+            mOperations++;
+            mChanged.add(position);
+            mLastChanged = position;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks that the cached formatters produce the same strings as building new formatters
+    on every call, and logs how many calls per second each approach manages.
+ */
+public class TestFormatterRegistry extends AndroidTestCase {
+    public static final String LOG_TAG = TestFormatterRegistry.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int BENCHMARK_ITERATIONS = 5000;
+
+    public void testFormattedDatesMatchUncachedFormatters() {
+        long now = System.currentTimeMillis();
+        for (int day = -2; day < 30; day++) {
+            long date = now + day * DAY_IN_MILLIS;
+            assertEquals("Error: Month/day string differs from an uncached formatter",
+                    new SimpleDateFormat("MMMM dd").format(date),
+                    Utility.getFormattedMonthDay(mContext, date));
+            assertEquals("Error: Friendly day string differs from the uncached implementation",
+                    uncachedFriendlyDayString(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+        }
+    }
+
+    public void testFormattedTemperatureMatchesStringFormat() {
+        for (double temperature = -40; temperature < 50; temperature += 0.7) {
+            String expected = String.format(
+                    mContext.getString(R.string.format_temperature), temperature);
+            assertEquals("Error: Temperature string differs from String.format",
+                    expected, FormatterRegistry.get().formatTemperature(mContext, temperature));
+        }
+    }
+
+    public void testInvalidateRebuildsFormatters() {
+        FormatterRegistry before = FormatterRegistry.get();
+        assertSame("Error: Formatters were rebuilt without an invalidation",
+                before, FormatterRegistry.get());
+        FormatterRegistry.invalidate();
+        assertNotSame("Error: Formatters were not rebuilt after an invalidation",
+                before, FormatterRegistry.get());
+    }
+
+    public void testLocaleChangeRebuildsFormatters() {
+        Locale original = Locale.getDefault();
+        try {
+            FormatterRegistry before = FormatterRegistry.get();
+            Locale.setDefault(Locale.FRANCE.equals(original) ? Locale.GERMANY : Locale.FRANCE);
+            assertNotSame("Error: Formatters were not rebuilt after a locale change",
+                    before, FormatterRegistry.get());
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    public void testBenchmarkFriendlyDayString() {
+        long date = System.currentTimeMillis() + 10 * DAY_IN_MILLIS;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            uncachedFriendlyDayString(date, false);
+        }
+        long uncachedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            Utility.getFriendlyDayString(mContext, date, false);
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "getFriendlyDayString calls/s before: "
+                + callsPerSecond(uncachedNanos) + " after: " + callsPerSecond(cachedNanos));
+    }
+
+    public void testBenchmarkFormatTemperature() {
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            String.format(mContext.getString(R.string.format_temperature), 21.5);
+        }
+        long uncachedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            FormatterRegistry.get().formatTemperature(mContext, 21.5);
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "formatTemperature calls/s before: "
+                + callsPerSecond(uncachedNanos) + " after: " + callsPerSecond(cachedNanos));
+    }
+
+    private static long callsPerSecond(long nanos) {
+        return BENCHMARK_ITERATIONS * 1000000000L / Math.max(1, nanos);
+    }
+
+    // The implementation Utility.getFriendlyDayString had before the formatters were cached.
+    private String uncachedFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today),
+                    new SimpleDateFormat("MMMM dd").format(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            if (julianDay == currentJulianDay) {
+                return mContext.getString(R.string.today);
+            } else if (julianDay == currentJulianDay + 1) {
+                return mContext.getString(R.string.tomorrow);
+            }
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestPositionIndex extends AndroidTestCase {
+
+    private static final long DAY = 1000 * 60 * 60 * 24;
+    private static final long FIRST_DATE = 1419033600000L;  // December 20th, 2014
+
+    public void testFindsEveryRow() {
+        // Enough rows to cover hourly data for several months.
+        List<ForecastRow> rows = new ArrayList<ForecastRow>();
+        for (int i = 0; i < 5000; i++) {
+            long date = FIRST_DATE + i * DAY / 24;
+            rows.add(new ForecastRow(i, date, "Clear", 20, 10, "94043", 800, "37.4", "-122.1"));
+        }
+        PositionIndex index = PositionIndex.build(rows);
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals("Error: Wrong position for row " + i,
+                    i, index.getPosition(rows.get(i).getDate()));
+        }
+        assertEquals("Error: A date that isn't in the list should have no position",
+                RecyclerView.NO_POSITION, index.getPosition(FIRST_DATE - DAY));
+    }
+
+    public void testEmptyIndex() {
+        assertEquals("Error: The empty index should have no positions",
+                RecyclerView.NO_POSITION, PositionIndex.EMPTY.getPosition(FIRST_DATE));
+        assertEquals("Error: The empty index should have no positions",
+                RecyclerView.NO_POSITION, PositionIndex.EMPTY.getPosition(0));
+    }
+}
@@ -16,8 +16,11 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -30,6 +33,9 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -381,6 +387,19 @@ public class TestProvider extends AndroidTestCase {
         TestUtilities.validateCursor("testInsertReadProvider.  Error validating joined Weather and Location Data with start date.",
                 weatherCursor, weatherValues);
 
+        // Get the joined Weather and Location data for several locations at once
+        weatherCursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationsWithStartDate(
+                        Arrays.asList(TestUtilities.TEST_LOCATION, "not_a_location"),
+                        TestUtilities.TEST_DATE),
+                null, // leaving "columns" null just returns all the columns.
+                null, // cols for "where" clause
+                null, // values for "where" clause
+                null  // sort order
+        );
+        TestUtilities.validateCursor("testInsertReadProvider.  Error validating joined Weather and Location Data for several locations.",
+                weatherCursor, weatherValues);
+
         // Get the joined Weather data for a specific date
         weatherCursor = mContext.getContentResolver().query(
                 WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
@@ -512,4 +531,101 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Checks that a batch of updates is applied in one transaction: either every operation
+        takes effect, or none of them do.
+     */
+    public void testApplyBatch() throws Exception {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        String selection = WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?";
+        long firstDate = WeatherContract.normalizeDate(weatherValues[0].getAsLong(WeatherEntry.COLUMN_DATE));
+        long secondDate = WeatherContract.normalizeDate(weatherValues[1].getAsLong(WeatherEntry.COLUMN_DATE));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(selection, new String[]{Long.toString(locationRowId), Long.toString(firstDate)})
+                .withValue(WeatherEntry.COLUMN_MAX_TEMP, 90)
+                .withExpectedCount(1)
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(selection, new String[]{Long.toString(locationRowId), Long.toString(secondDate)})
+                .withValue(WeatherEntry.COLUMN_SHORT_DESC, "Comets")
+                .withExpectedCount(1)
+                .build());
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        weatherValues[0].put(WeatherEntry.COLUMN_MAX_TEMP, 90);
+        weatherValues[1].put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testApplyBatch. Error validating first updated day",
+                cursor, weatherValues[0]);
+        cursor.moveToNext();
+        TestUtilities.validateCurrentRecord("testApplyBatch. Error validating second updated day",
+                cursor, weatherValues[1]);
+        cursor.close();
+
+        // A batch with an operation that fails must not leave the earlier ones applied.
+        operations.clear();
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(selection, new String[]{Long.toString(locationRowId), Long.toString(firstDate)})
+                .withValue(WeatherEntry.COLUMN_MAX_TEMP, 100)
+                .withExpectedCount(1)
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(selection, new String[]{Long.toString(locationRowId), "0"})
+                .withValue(WeatherEntry.COLUMN_MAX_TEMP, 100)
+                .withExpectedCount(1)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("Error: A batch updating a missing day should fail");
+        } catch (OperationApplicationException expected) {
+        }
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testApplyBatch. Error: A failed batch changed the first day",
+                cursor, weatherValues[0]);
+        cursor.close();
+    }
+
+    // A sync of a new location inserts it and its forecast in one batch, with the forecast
+    // referring back to the location's new id.
+    public void testApplyBatchWithLocationBackReference() throws Exception {
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues values : weatherValues) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+
+        ContentProviderResult[] results = mContext.getContentResolver()
+                .applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        long locationRowId = ContentUris.parseId(results[0].uri);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationRowId)},
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Every day should belong to the inserted location",
+                weatherValues.length, cursor.getCount());
+        cursor.close();
+    }
 }
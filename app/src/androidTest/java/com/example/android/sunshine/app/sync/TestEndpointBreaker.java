@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks the backoff delays, that an open breaker survives being read back from its
+    preferences, and that a probe given up without an outcome doesn't block the endpoint.
+ */
+public class TestEndpointBreaker extends AndroidTestCase {
+
+    private static final String ENDPOINT = "test";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new EndpointBreaker(mContext, ENDPOINT).recordSuccess();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new EndpointBreaker(mContext, ENDPOINT).recordSuccess();
+        super.tearDown();
+    }
+
+    public void testDelayDoublesWithJitter() {
+        long base = EndpointBreaker.BASE_DELAY_MILLIS;
+        assertEquals(base / 2, EndpointBreaker.computeDelay(1, 0));
+        assertEquals(base * 2 / 2, EndpointBreaker.computeDelay(2, 0));
+        assertEquals(base * 4 / 2, EndpointBreaker.computeDelay(3, 0));
+        assertTrue("Error: Jitter should stay within the delay",
+                EndpointBreaker.computeDelay(3, 0.999) < base * 4);
+
+        assertEquals("Error: The delay should be capped",
+                EndpointBreaker.MAX_DELAY_MILLIS / 2, EndpointBreaker.computeDelay(1000, 0));
+    }
+
+    public void testBreakerOpensAndCloses() {
+        EndpointBreaker breaker = new EndpointBreaker(mContext, ENDPOINT);
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertFalse("Error: A failure should open the breaker", breaker.allowRequest());
+        assertFalse("Error: The open breaker should be persisted",
+                new EndpointBreaker(mContext, ENDPOINT).allowRequest());
+
+        breaker.recordSuccess();
+        assertTrue("Error: A success should close the breaker", breaker.allowRequest());
+        assertTrue(new EndpointBreaker(mContext, ENDPOINT).allowRequest());
+    }
+
+    public void testReleasedProbeLetsTheNextRequestThrough() {
+        EndpointBreaker breaker = new EndpointBreaker(mContext, ENDPOINT);
+        breaker.recordFailure();
+        long later = System.currentTimeMillis() + EndpointBreaker.MAX_DELAY_MILLIS;
+
+        assertTrue("Error: One request should be let through once the delay is over",
+                breaker.allowRequest(later));
+        assertFalse("Error: Others should wait for its outcome", breaker.allowRequest(later));
+
+        breaker.releaseProbe();
+        assertTrue("Error: A released probe should not hold back the next request",
+                breaker.allowRequest(later));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the quota bucket holds reserves back from lower priorities, refills over time
+    and keeps its level across instances.
+ */
+public class TestQuotaGovernor extends AndroidTestCase {
+
+    private static final int CAPACITY = 8;
+    private static final long REFILL_MILLIS = 1000;
+
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences("test_quota", Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    public void testPrioritiesKeepReserves() {
+        long now = System.currentTimeMillis();
+        QuotaGovernor governor = new QuotaGovernor(mPrefs, CAPACITY, REFILL_MILLIS);
+
+        // Speculative requests leave half of the bucket.
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            assertTrue(governor.tryAcquire(QuotaGovernor.PRIORITY_SPECULATIVE, now));
+        }
+        assertFalse("Error: Speculative requests should leave half of the quota",
+                governor.tryAcquire(QuotaGovernor.PRIORITY_SPECULATIVE, now));
+
+        // Background requests leave a quarter.
+        for (int i = 0; i < CAPACITY / 4; i++) {
+            assertTrue(governor.tryAcquire(QuotaGovernor.PRIORITY_BACKGROUND, now));
+        }
+        assertFalse("Error: Background requests should leave a quarter of the quota",
+                governor.tryAcquire(QuotaGovernor.PRIORITY_BACKGROUND, now));
+
+        // The user can have the rest.
+        for (int i = 0; i < CAPACITY / 4; i++) {
+            assertTrue(governor.tryAcquire(QuotaGovernor.PRIORITY_USER, now));
+        }
+        assertFalse("Error: An empty bucket should refuse every request",
+                governor.tryAcquire(QuotaGovernor.PRIORITY_USER, now));
+
+        assertEquals(CAPACITY / 4, governor.getGrantedCount(QuotaGovernor.PRIORITY_USER));
+        assertEquals(1, governor.getDeniedCount(QuotaGovernor.PRIORITY_SPECULATIVE));
+    }
+
+    public void testRefillAndPersistence() {
+        long now = System.currentTimeMillis();
+        QuotaGovernor governor = new QuotaGovernor(mPrefs, CAPACITY, REFILL_MILLIS);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(governor.tryAcquire(QuotaGovernor.PRIORITY_USER, now));
+        }
+
+        QuotaGovernor restarted = new QuotaGovernor(mPrefs, CAPACITY, REFILL_MILLIS);
+        assertFalse("Error: A new instance should not get a fresh bucket",
+                restarted.tryAcquire(QuotaGovernor.PRIORITY_USER, now));
+        assertTrue("Error: A token should be back after the refill interval",
+                restarted.tryAcquire(QuotaGovernor.PRIORITY_USER, now + REFILL_MILLIS));
+        assertFalse(restarted.tryAcquire(QuotaGovernor.PRIORITY_USER, now + REFILL_MILLIS));
+    }
+}
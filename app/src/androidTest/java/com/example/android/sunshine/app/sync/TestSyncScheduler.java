@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Checks how forecast changes are measured and how the sync interval follows them and the
+    device state.
+ */
+public class TestSyncScheduler extends AndroidTestCase {
+
+    private static final long DAY = 1000 * 60 * 60 * 24;
+    private static final long FIRST_DATE = 1419033600000L;  // December 20th, 2014
+
+    private static final int NOON = 12;
+
+    public void testMeasureChange() {
+        Map<Long, ContentValues> previous = new HashMap<Long, ContentValues>();
+        previous.put(FIRST_DATE, day(0, 20, 10, 800));
+        previous.put(FIRST_DATE + DAY, day(1, 20, 10, 800));
+
+        ContentValues[] same = {day(0, 20, 10, 800), day(1, 20, 10, 800)};
+        assertEquals(0f, SyncScheduler.measureChange(previous, same));
+
+        // Two degrees warmer on both days, and rain instead of a clear sky on the second.
+        ContentValues[] changed = {day(0, 22, 12, 800), day(1, 22, 12, 501)};
+        assertEquals(3.5f, SyncScheduler.measureChange(previous, changed));
+
+        ContentValues[] later = {day(5, 20, 10, 800)};
+        assertEquals("Error: Forecasts without common days can't be compared",
+                -1f, SyncScheduler.measureChange(previous, later));
+    }
+
+    public void testIntervalFollowsVolatility() {
+        assertEquals("Error: Typical volatility should keep the default interval",
+                SunshineSyncAdapter.SYNC_INTERVAL, SyncScheduler.computeInterval(
+                        SyncScheduler.TYPICAL_VOLATILITY, NOON, false, false));
+        int stable = SyncScheduler.computeInterval(0.5f, NOON, false, false);
+        int volatile_ = SyncScheduler.computeInterval(8f, NOON, false, false);
+        assertEquals(SunshineSyncAdapter.SYNC_INTERVAL * 2, stable);
+        assertEquals(SunshineSyncAdapter.SYNC_INTERVAL / 2, volatile_);
+    }
+
+    public void testIntervalFollowsDeviceState() {
+        float volatility = SyncScheduler.TYPICAL_VOLATILITY;
+        int day = SyncScheduler.computeInterval(volatility, NOON, false, false);
+        assertTrue("Error: Syncs should be further apart overnight",
+                SyncScheduler.computeInterval(volatility, 3, false, false) > day);
+        assertTrue("Error: Syncs should be closer together while charging",
+                SyncScheduler.computeInterval(volatility, NOON, true, false) < day);
+        assertTrue("Error: Syncs should be further apart on metered networks",
+                SyncScheduler.computeInterval(volatility, NOON, false, true) > day);
+
+        assertEquals(SyncScheduler.MAX_INTERVAL,
+                SyncScheduler.computeInterval(0f, 3, false, true));
+        assertEquals(SyncScheduler.MIN_INTERVAL,
+                SyncScheduler.computeInterval(100f, NOON, true, false));
+    }
+
+    private static ContentValues day(int index, double high, double low, int weatherId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, FIRST_DATE + index * DAY);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, low);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return values;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks the alert rules against hand-built forecasts, and that a rule only alerts once for
+    the same location and day.
+ */
+public class TestWeatherAlertEngine extends AndroidTestCase {
+
+    private static final long DAY = 1000 * 60 * 60 * 24;
+    private static final long FIRST_DATE = 1419033600000L;  // December 20th, 2014
+
+    private static final WeatherAlertEngine.Thresholds THRESHOLDS =
+            new WeatherAlertEngine.Thresholds(8, 60, true);
+
+    public void testCalmForecastRaisesNothing() {
+        ContentValues[] days = {day(0, 20, 10, 800), day(1, 22, 12, 801), day(2, 19, 15, 802)};
+        WeatherAlertEngine.Alert[] alerts = WeatherAlertEngine.evaluate(days, THRESHOLDS);
+        for (WeatherAlertEngine.Alert alert : alerts) {
+            assertNull("Error: A calm forecast should not raise alerts", alert);
+        }
+    }
+
+    public void testEachRuleFindsFirstDay() {
+        ContentValues[] days = {day(0, 20, 3, 800), day(1, 9, 20, 800), day(2, 10, 25, 211)};
+        WeatherAlertEngine.Alert[] alerts = WeatherAlertEngine.evaluate(days, THRESHOLDS);
+
+        WeatherAlertEngine.Alert swing = alerts[WeatherAlertEngine.RULE_TEMPERATURE_SWING];
+        assertNotNull("Error: An 11 degree drop should raise a temperature alert", swing);
+        assertEquals(FIRST_DATE + DAY, swing.getDate());
+        assertEquals(-11.0, swing.getValue());
+
+        WeatherAlertEngine.Alert wind = alerts[WeatherAlertEngine.RULE_WIND];
+        assertNotNull("Error: 20 m/s (72 km/h) should raise a wind alert", wind);
+        assertEquals("Error: The wind alert should be for the first windy day",
+                FIRST_DATE + DAY, wind.getDate());
+
+        WeatherAlertEngine.Alert storm = alerts[WeatherAlertEngine.RULE_STORM];
+        assertNotNull("Error: A thunderstorm should raise a storm alert", storm);
+        assertEquals(FIRST_DATE + 2 * DAY, storm.getDate());
+    }
+
+    public void testWindIsComparedInKilometersPerHour() {
+        // The 60 km/h threshold is 16.67 m/s.
+        ContentValues[] below = {day(0, 20, 16.5, 800)};
+        assertNull("Error: 16.5 m/s (59.4 km/h) should not raise a wind alert",
+                WeatherAlertEngine.evaluate(below, THRESHOLDS)[WeatherAlertEngine.RULE_WIND]);
+
+        ContentValues[] above = {day(0, 20, 16.8, 800)};
+        WeatherAlertEngine.Alert wind =
+                WeatherAlertEngine.evaluate(above, THRESHOLDS)[WeatherAlertEngine.RULE_WIND];
+        assertNotNull("Error: 16.8 m/s (60.5 km/h) should raise a wind alert", wind);
+        assertEquals("Error: The alert should carry the stored speed", 16.8, wind.getValue());
+    }
+
+    public void testDisabledThresholdsAndDistantDays() {
+        ContentValues[] days = {day(0, 20, 25, 211), day(1, 40, 25, 211)};
+        WeatherAlertEngine.Alert[] alerts = WeatherAlertEngine.evaluate(days,
+                new WeatherAlertEngine.Thresholds(0, 0, false));
+        for (WeatherAlertEngine.Alert alert : alerts) {
+            assertNull("Error: Thresholds that are off should not raise alerts", alert);
+        }
+
+        ContentValues[] later = new ContentValues[WeatherAlertEngine.LOOKAHEAD_DAYS + 1];
+        for (int i = 0; i < later.length; i++) {
+            later[i] = day(i, 20, 10, i == later.length - 1 ? 211 : 800);
+        }
+        assertNull("Error: Storms beyond the lookahead should not raise alerts",
+                WeatherAlertEngine.evaluate(later, THRESHOLDS)[WeatherAlertEngine.RULE_STORM]);
+    }
+
+    public void testRuleIsSuppressedForSameDay() {
+        SharedPreferences state = mContext.getSharedPreferences("test_weather_alerts",
+                Context.MODE_PRIVATE);
+        state.edit().clear().commit();
+
+        ContentValues[] days = {day(0, 20, 10, 211)};
+        WeatherAlertEngine.Alert storm =
+                WeatherAlertEngine.evaluate(days, THRESHOLDS)[WeatherAlertEngine.RULE_STORM];
+        assertTrue("Error: The first storm alert should be raised",
+                WeatherAlertEngine.markAlerted(state, "94043", storm));
+        assertFalse("Error: The same storm should not alert twice",
+                WeatherAlertEngine.markAlerted(state, "94043", storm));
+        assertTrue("Error: The same storm elsewhere should still alert",
+                WeatherAlertEngine.markAlerted(state, "10001", storm));
+
+        state.edit().clear().commit();
+    }
+
+    private static ContentValues day(int offset, double high, double windSpeed, int weatherId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, FIRST_DATE + offset * DAY);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, high - 10);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        values.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return values;
+    }
+}
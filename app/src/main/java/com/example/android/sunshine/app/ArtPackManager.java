@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the selected art pack's images decoded in memory, at the sizes the forecast list and
+ * the detail view show them, so binding a day never starts an image request.
+ * <p>
+ * An art pack only has about ten distinct images, so the whole set is loaded in the background
+ * when the app starts or the art pack changes, and then pinned until the next change.  Loads go
+ * through Glide's disk cache, so a set loaded once can be loaded again offline.  Until the set
+ * is ready, days are bound with the bundled art instead.  All methods must be called on the UI
+ * thread.
+ */
+public final class ArtPackManager {
+    private static final String LOG_TAG = ArtPackManager.class.getSimpleName();
+
+    /** Art at the size of a list item's icon. */
+    public static final int SIZE_LIST = 0;
+    /** Art at the size of today's list item and the detail view. */
+    public static final int SIZE_TODAY = 1;
+    private static final int SIZE_COUNT = 2;
+
+    // How long to wait before trying to complete a set that failed to load, e.g. offline.
+    private static final long RETRY_MILLIS = 60 * 1000;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    // Both only used on the UI thread.
+    private static PinnedSet sPinned;
+    // The art pack format being loaded, or null if no load is running.
+    private static String sLoadingFormat;
+
+    private ArtPackManager() {
+    }
+
+    private static final class PinnedSet {
+        final String mFormat;
+        final boolean mComplete;
+        final long mLoadedAt;
+        // Indexed by size, then keyed by art name.
+        final Map<String, Bitmap>[] mArt;
+        // Hold the bitmaps in mArt, so Glide doesn't reuse them until the set is released.
+        final List<FutureTarget<Bitmap>> mTargets;
+
+        PinnedSet(String format, boolean complete, long loadedAt, Map<String, Bitmap>[] art,
+                  List<FutureTarget<Bitmap>> targets) {
+            mFormat = format;
+            mComplete = complete;
+            mLoadedAt = loadedAt;
+            mArt = art;
+            mTargets = targets;
+        }
+
+        /**
+         * Hands the set's requests and bitmaps back to Glide.  The set must not be used after.
+         */
+        void release() {
+            for (FutureTarget<Bitmap> target : mTargets) {
+                Glide.clear(target);
+            }
+        }
+    }
+
+    /**
+     * Shows the condition's art in the view, from the pinned set if it's loaded and from the
+     * bundled resources otherwise.
+     *
+     * @param size {@link #SIZE_LIST} or {@link #SIZE_TODAY}
+     * @param bundledResId The bundled image to use when the art pack's isn't available
+     */
+    public static void bindArt(Context context, ImageView view, WeatherCondition condition,
+                               int size, int bundledResId) {
+        Bitmap art = null;
+        if (!SettingsSnapshot.get(context).usingLocalGraphics()) {
+            art = getArt(context, condition, size);
+        }
+        if (art != null) {
+            view.setImageBitmap(art);
+        } else {
+            view.setImageResource(bundledResId);
+        }
+    }
+
+    /**
+     * @return the pinned art for the condition in the selected art pack, or null if it isn't
+     * loaded yet, in which case a load is started
+     */
+    public static Bitmap getArt(Context context, WeatherCondition condition, int size) {
+        String artName = condition.getArtName();
+        if (artName == null) {
+            return null;
+        }
+        PinnedSet pinned = sPinned;
+        String format = SettingsSnapshot.get(context).getArtPackFormat();
+        Bitmap art = null;
+        if (pinned != null && pinned.mFormat.equals(format)) {
+            art = pinned.mArt[size].get(artName);
+        }
+        if (art == null) {
+            preload(context);
+        }
+        return art;
+    }
+
+    /**
+     * Loads the selected art pack in the background, unless it is already pinned or loading.
+     * Views are asked to rebind through {@link PresentationInvalidator} once it is ready.  Must
+     * be called on the UI thread.
+     */
+    public static void preload(Context context) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        final String format = settings.getArtPackFormat();
+        if (settings.usingLocalGraphics() || format.equals(sLoadingFormat)) {
+            return;
+        }
+        PinnedSet pinned = sPinned;
+        if (pinned != null && pinned.mFormat.equals(format) && (pinned.mComplete
+                || SystemClock.elapsedRealtime() - pinned.mLoadedAt < RETRY_MILLIS)) {
+            return;
+        }
+
+        sLoadingFormat = format;
+        final Context appContext = context.getApplicationContext();
+        final int[] sizes = getSizes(appContext.getResources());
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PinnedSet loaded = load(appContext, format, sizes);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (format.equals(sLoadingFormat)) {
+                            sLoadingFormat = null;
+                        }
+                        PinnedSet previous = sPinned;
+                        sPinned = loaded;
+                        PresentationInvalidator.invalidate();
+                        if (previous != null) {
+                            // Views showing its art have just been asked to rebind.
+                            previous.release();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PinnedSet load(Context context, String format, int[] sizes) {
+        long start = SystemClock.elapsedRealtime();
+        Map<String, Bitmap>[] art = new Map[SIZE_COUNT];
+        for (int size = 0; size < SIZE_COUNT; size++) {
+            art[size] = new HashMap<String, Bitmap>();
+        }
+        List<FutureTarget<Bitmap>> targets = new ArrayList<FutureTarget<Bitmap>>();
+        boolean complete = true;
+        Set<String> artNames = new HashSet<String>();
+        for (int weatherId = 200; weatherId <= 962; weatherId++) {
+            WeatherCondition condition = WeatherCondition.forId(weatherId);
+            String artName = condition.getArtName();
+            if (artName == null || !artNames.add(artName)) {
+                continue;
+            }
+            String artUrl = String.format(Locale.US, format, artName);
+            for (int size = 0; size < SIZE_COUNT; size++) {
+                FutureTarget<Bitmap> target = Glide.with(context)
+                        .load(artUrl)
+                        .asBitmap()
+                        // Keep the source so the other size can be decoded offline.
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .fitCenter()
+                        .into(sizes[size], sizes[size]);
+                targets.add(target);
+                try {
+                    art[size].put(artName, target.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error loading art from " + artUrl, e);
+                    complete = false;
+                    break;
+                }
+            }
+        }
+        Log.d(LOG_TAG, "Loaded art pack in " + (SystemClock.elapsedRealtime() - start) + "ms"
+                + (complete ? "" : ", some images are missing"));
+        return new PinnedSet(format, complete, SystemClock.elapsedRealtime(), art, targets);
+    }
+
+    private static int[] getSizes(Resources resources) {
+        int[] sizes = new int[SIZE_COUNT];
+        sizes[SIZE_LIST] = resources.getDimensionPixelSize(R.dimen.list_icon);
+        sizes[SIZE_TODAY] = resources.getDimensionPixelSize(R.dimen.today_icon);
+        return sizes;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Offline list of the larger cities OpenWeatherMap recognizes, used to suggest locations as the
+ * user types and to warn about names that may be misspelled.  OpenWeatherMap knows far more
+ * places than the index holds, so a name missing from it must still be accepted.
+ * <p>
+ * The bundled asset holds one "City,CC" query per fixed-width line, sorted by lower-cased
+ * bytes, and is stored uncompressed so it can be memory-mapped.  Lookups binary search the
+ * mapped bytes directly, so they don't read the file into memory or allocate anything except
+ * the suggestions they return.
+ */
+final class CityIndex {
+    private static final String LOG_TAG = CityIndex.class.getSimpleName();
+
+    private static final String ASSET_NAME = "cities.idx";
+    // Each line is padded with spaces to this many bytes, including the newline.
+    private static final int RECORD_SIZE = 32;
+
+    private static CityIndex sInstance;
+
+    // Null if the index couldn't be loaded, in which case every location is accepted.
+    private final ByteBuffer mRecords;
+    private final int mCount;
+
+    private CityIndex(ByteBuffer records) {
+        mRecords = records;
+        mCount = records == null ? 0 : records.capacity() / RECORD_SIZE;
+    }
+
+    /**
+     * @return the bundled index, mapping it the first time it's needed
+     */
+    static synchronized CityIndex get(Context context) {
+        if (sInstance == null) {
+            sInstance = new CityIndex(map(context));
+        }
+        return sInstance;
+    }
+
+    private static ByteBuffer map(Context context) {
+        AssetFileDescriptor descriptor = null;
+        FileInputStream in = null;
+        try {
+            descriptor = context.getAssets().openFd(ASSET_NAME);
+            in = new FileInputStream(descriptor.getFileDescriptor());
+            // The mapping stays valid after the stream is closed.
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error mapping " + ASSET_NAME, e);
+            return null;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+                if (descriptor != null) {
+                    descriptor.close();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing " + ASSET_NAME, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of cities in the index
+     */
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Looks for a location the forecast server is sure to recognize: a postal code, or the name
+     * of a city in the index, optionally followed by its country code.  Partly typed city names
+     * don't match.  This is only advice; a location that doesn't match may still be valid.
+     */
+    boolean isKnownLocation(CharSequence location) {
+        if (mRecords == null || looksLikePostalCode(location)) {
+            return true;
+        }
+        if (indexOf(location, ',') >= 0) {
+            // "City,CC" must match a whole line, with only padding after it.
+            int record = lowerBound(location, (char) 0);
+            return record < mCount && compare(record, location, (char) 0) == 0
+                    && (location.length() == RECORD_SIZE - 1
+                    || mRecords.get(record * RECORD_SIZE + location.length()) == ' ');
+        }
+        // A city name on its own must be followed by a country code in some line.
+        int record = lowerBound(location, ',');
+        return record < mCount && compare(record, location, ',') == 0;
+    }
+
+    /**
+     * Fills the array with the cities starting with the prefix, in order.
+     *
+     * @return how many suggestions were found, at most the length of the array
+     */
+    int suggest(CharSequence prefix, String[] suggestions) {
+        if (mRecords == null || prefix.length() == 0) {
+            return 0;
+        }
+        int found = 0;
+        for (int record = lowerBound(prefix, (char) 0);
+             record < mCount && found < suggestions.length
+                     && compare(record, prefix, (char) 0) == 0;
+             record++) {
+            suggestions[found++] = getCity(record);
+        }
+        return found;
+    }
+
+    /**
+     * @return the "City,CC" query stored at the position
+     */
+    String getCity(int record) {
+        int start = record * RECORD_SIZE;
+        int end = start + RECORD_SIZE - 1;
+        while (end > start && mRecords.get(end - 1) == ' ') {
+            end--;
+        }
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) mRecords.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return true for text shaped like a postal code, such as "94043", "SW1A 1AA" or
+     * "94043,us", which the index can't check
+     */
+    static boolean looksLikePostalCode(CharSequence location) {
+        int length = location.length();
+        int comma = indexOf(location, ',');
+        int end = comma >= 0 ? comma : length;
+        if (end < 3 || end > 10) {
+            return false;
+        }
+        boolean hasDigit = false;
+        for (int i = 0; i < end; i++) {
+            char c = location.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')
+                    && c != ' ' && c != '-') {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+
+    // Returns the first record not ordered before the key.
+    private int lowerBound(CharSequence key, char terminator) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, key, terminator) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the start of a record with the key, ignoring ASCII case.
+     *
+     * @param terminator If not 0, compared after the key as if it were appended to it
+     * @return negative, zero or positive as the record sorts before, with or after the key
+     */
+    private int compare(int record, CharSequence key, char terminator) {
+        int keyLength = key.length();
+        int length = terminator != 0 ? keyLength + 1 : keyLength;
+        if (length > RECORD_SIZE - 1) {
+            return -1;
+        }
+        int offset = record * RECORD_SIZE;
+        for (int i = 0; i < length; i++) {
+            int recordChar = fold(mRecords.get(offset + i) & 0xff);
+            // Anything beyond ASCII can't be in the index, so sort it after every record.
+            int keyChar = i < keyLength ? key.charAt(i) : terminator;
+            keyChar = keyChar > 0x7f ? 0x100 : fold(keyChar);
+            if (recordChar != keyChar) {
+                return recordChar - keyChar;
+            }
+        }
+        return 0;
+    }
+
+    private static int fold(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int indexOf(CharSequence text, char c) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -37,14 +37,14 @@ import android.view.ViewParent;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastRepository.Observer, PresentationInvalidator.Listener {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,8 +55,19 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The forecast shared with the list, if this fragment is shown next to it
+    private ForecastRepository mRepository;
+
+    // The day last bound, kept so that unit and art changes can rebind without a query
+    private boolean mSummaryBound;
+    private int mBoundWeatherId;
+    private long mBoundDate;
+    private double mBoundHigh;
+    private double mBoundLow;
+    private ForecastRepository.Extras mBoundExtras;
 
     private static final int DETAIL_LOADER = 0;
+    private static final int EXTRAS_LOADER = 1;
 
     private static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
@@ -87,6 +98,23 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     public static final int COL_WEATHER_DEGREES = 8;
     public static final int COL_WEATHER_CONDITION_ID = 9;
 
+    // When the rest of the day comes from the shared forecast, only the columns the list
+    // doesn't load are queried.
+    private static final String[] EXTRAS_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // These indices are tied to EXTRAS_COLUMNS.
+    private static final int COL_EXTRAS_DATE = 0;
+    private static final int COL_EXTRAS_HUMIDITY = 1;
+    private static final int COL_EXTRAS_PRESSURE = 2;
+    private static final int COL_EXTRAS_WIND_SPEED = 3;
+    private static final int COL_EXTRAS_DEGREES = 4;
+
     private ImageView mIconView;
     private TextView mDateView;
     private TextView mDescriptionView;
@@ -153,8 +181,22 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
+        if (getActivity() instanceof ForecastRepository.Owner) {
+            mRepository = ((ForecastRepository.Owner) getActivity()).getForecastRepository();
+            mRepository.registerObserver(this);
+        }
+        PresentationInvalidator.registerListener(this);
+        bindFromRepositoryOrLoad();
+    }
+
+    @Override
+    public void onDestroyView() {
+        PresentationInvalidator.unregisterListener(this);
+        if (null != mRepository) {
+            mRepository.unregisterObserver(this);
+        }
+        super.onDestroyView();
     }
 
     void onLocationChanged( String newLocation ) {
@@ -164,8 +206,65 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
-            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            getLoaderManager().destroyLoader(DETAIL_LOADER);
+            getLoaderManager().destroyLoader(EXTRAS_LOADER);
+            bindFromRepositoryOrLoad();
+        }
+    }
+
+    @Override
+    public void onForecastChanged(ForecastRepository repository) {
+        if (null != mUri && getLoaderManager().getLoader(DETAIL_LOADER) == null) {
+            bindFromRepository();
+        }
+    }
+
+    @Override
+    public void onPresentationChanged() {
+        if (mSummaryBound) {
+            bindSummary(mBoundWeatherId, mBoundDate, mBoundHigh, mBoundLow);
+            if (null != mBoundExtras) {
+                bindExtras(mBoundExtras);
+            }
+            // Refresh the share intent, since the forecast text changed.
+            finishBinding();
+        }
+    }
+
+    /*
+        Shows the day from the forecast already loaded by the list if it's there, and otherwise
+        falls back to querying everything.
+     */
+    private void bindFromRepositoryOrLoad() {
+        if (!bindFromRepository()) {
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        }
+    }
+
+    /*
+        Binds the day from the shared forecast, loading the detail-only columns if they aren't
+        cached yet.  Returns false if the day isn't in the shared forecast.
+     */
+    private boolean bindFromRepository() {
+        if (null == mRepository || null == mUri) {
+            return false;
+        }
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri);
+        long date = WeatherContract.WeatherEntry.getDateFromUri(mUri);
+        ForecastRow row = mRepository.getRow(locationSetting, date);
+        if (null == row) {
+            return false;
+        }
+        bindSummary(row.getWeatherId(), row.getDate(), row.getMaxTemp(), row.getMinTemp());
+        ForecastRepository.Extras extras = mRepository.getExtras(locationSetting, date);
+        if (null != extras) {
+            bindExtras(extras);
+        } else {
+            // Data changes reload this on their own, so only start it if it isn't running.
+            getLoaderManager().initLoader(EXTRAS_LOADER, null, this);
         }
+        finishBinding();
+        return true;
     }
 
     @Override
@@ -176,7 +275,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             return new CursorLoader(
                     getActivity(),
                     mUri,
-                    DETAIL_COLUMNS,
+                    id == EXTRAS_LOADER ? EXTRAS_COLUMNS : DETAIL_COLUMNS,
                     null,
                     null,
                     null
@@ -191,79 +290,94 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
-
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
+        if (loader.getId() == EXTRAS_LOADER) {
+            if (data != null && data.moveToFirst()) {
+                ForecastRepository.Extras extras = new ForecastRepository.Extras(
+                        data.getFloat(COL_EXTRAS_HUMIDITY),
+                        data.getFloat(COL_EXTRAS_PRESSURE),
+                        data.getFloat(COL_EXTRAS_WIND_SPEED),
+                        data.getFloat(COL_EXTRAS_DEGREES));
+                mRepository.putExtras(WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri),
+                        data.getLong(COL_EXTRAS_DATE), extras);
+                bindExtras(extras);
             }
+            return;
+        }
+        if (data != null && data.moveToFirst()) {
+            bindSummary(data.getInt(COL_WEATHER_CONDITION_ID),
+                    data.getLong(COL_WEATHER_DATE),
+                    data.getDouble(COL_WEATHER_MAX_TEMP),
+                    data.getDouble(COL_WEATHER_MIN_TEMP));
+            bindExtras(new ForecastRepository.Extras(
+                    data.getFloat(COL_WEATHER_HUMIDITY),
+                    data.getFloat(COL_WEATHER_PRESSURE),
+                    data.getFloat(COL_WEATHER_WIND_SPEED),
+                    data.getFloat(COL_WEATHER_DEGREES)));
+        }
+        finishBinding();
+    }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    private void bindSummary(int weatherId, long date, double high, double low) {
+        mSummaryBound = true;
+        mBoundWeatherId = weatherId;
+        mBoundDate = date;
+        mBoundHigh = high;
+        mBoundLow = low;
 
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
         }
+
+        WeatherCondition condition = WeatherCondition.forId(weatherId);
+
+        ArtPackManager.bindArt(getActivity(), mIconView, condition, ArtPackManager.SIZE_TODAY,
+                condition.getArtResId());
+
+        // Update views for day of week and date
+        String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
+        mDateView.setText(dateText);
+
+        // Get description from weather condition ID
+        String description = condition.getDescription(getActivity());
+        mDescriptionView.setText(description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
+
+        String highString = Utility.formatTemperature(getActivity(), high);
+        mHighTempView.setText(highString);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+
+        String lowString = Utility.formatTemperature(getActivity(), low);
+        mLowTempView.setText(lowString);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    }
+
+    private void bindExtras(ForecastRepository.Extras extras) {
+        mBoundExtras = extras;
+        mHumidityView.setText(getActivity().getString(R.string.format_humidity, extras.getHumidity()));
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        mWindView.setText(Utility.getFormattedWind(getActivity(), extras.getWindSpeed(),
+                extras.getDegrees()));
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
+
+        mPressureView.setText(getString(R.string.format_pressure, extras.getPressure()));
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+    }
+
+    private void finishBinding() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
@@ -17,10 +17,12 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
+import android.text.format.Time;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -29,14 +31,18 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * <p>
+ * The rows are copied out of each new cursor and compared with the ones on screen in the
+ * background, so that a sync only rebinds the rows that actually changed.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionLookup {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -44,7 +50,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private List<ForecastRow> mRows = Collections.emptyList();
+    private PositionIndex mIndex = PositionIndex.EMPTY;
+    // The julian day the rows were last bound on, since the date labels are relative to today.
+    private int mBoundJulianDay;
+    private DiffTask mPendingDiff;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +83,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mRows.get(adapterPosition).getDate(), this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +99,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by their date, which lets selections follow them across updates
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,43 +137,41 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastRow row = mRows.get(position);
+        int weatherId = row.getWeatherId();
+        WeatherCondition condition = WeatherCondition.forId(weatherId);
         int defaultImage;
+        int artSize;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = condition.getArtResId();
+                artSize = ArtPackManager.SIZE_TODAY;
                 useLongToday = true;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = condition.getIconResId();
+                artSize = ArtPackManager.SIZE_LIST;
                 useLongToday = false;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
-        } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
-        }
+        ArtPackManager.bindArt(mContext, forecastAdapterViewHolder.mIconView, condition,
+                artSize, defaultImage);
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        // Read date from the row
+        long dateInMillis = row.getDate();
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // Named after the date rather than the position, since rows that move aren't rebound
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + dateInMillis);
 
         // Find TextView and set formatted date on it
         forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
 
         // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        String description = condition.getDescription(mContext);
 
         // Find TextView and set weather forecast on it
         forecastAdapterViewHolder.mDescriptionView.setText(description);
@@ -170,14 +181,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        // Read high temperature from the row
+        double high = row.getMaxTemp();
         String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        // Read low temperature from the row
+        double low = row.getMinTemp();
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
@@ -206,20 +217,113 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if (position < 0 || position >= mRows.size()) return RecyclerView.NO_ID;
+        return mRows.get(position).getDate();
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.size();
     }
 
+    /**
+     * Replaces the displayed forecast with the contents of a new cursor.  The cursor is copied
+     * right away, so it is safe for the caller to close it once this returns.
+     * <p>
+     * If rows are already displayed, the differences are computed in the background and
+     * applied as item-level changes once ready.  Otherwise the list is simply replaced.
+     */
     public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+        swapRows(ForecastRow.fromCursor(newCursor));
+    }
+
+    /**
+     * Replaces the displayed forecast with rows already copied out of a cursor.
+     *
+     * @see #swapCursor(Cursor)
+     */
+    public void swapRows(List<ForecastRow> newRows) {
+        if (mPendingDiff != null) {
+            mPendingDiff.cancel(false);
+            mPendingDiff = null;
+        }
+        int julianDay = getCurrentJulianDay();
+        if (mRows.isEmpty() || newRows.isEmpty() || julianDay != mBoundJulianDay) {
+            // Nothing to diff against, or every "Today"/"Tomorrow" label may have shifted.
+            setRows(newRows, PositionIndex.build(newRows), julianDay);
+            notifyDataSetChanged();
+        } else {
+            mPendingDiff = new DiffTask(mRows, newRows, julianDay);
+            mPendingDiff.execute();
+        }
+    }
+
+    private void setRows(List<ForecastRow> rows, PositionIndex index, int julianDay) {
+        mRows = rows;
+        mIndex = index;
+        mBoundJulianDay = julianDay;
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    private static int getCurrentJulianDay() {
+        long now = System.currentTimeMillis();
+        return Time.getJulianDay(now, FormatterRegistry.get().getGmtOffset(now));
+    }
+
+    /**
+     * @param date The date of the forecast to find
+     * @return the position of the row for that date, or {@link RecyclerView#NO_POSITION}
+     */
+    public int getPositionForDate(long date) {
+        return mIndex.getPosition(date);
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        // Item ids are the row dates
+        return getPositionForDate(id);
+    }
+
+    /**
+     * @return the row displayed at the given position
+     */
+    public ForecastRow getRow(int position) {
+        return mRows.get(position);
+    }
+
+    /**
+     * Works out the changes between the displayed rows and a new set in the background, then
+     * applies them on the UI thread unless another cursor arrived in the meantime.
+     */
+    private class DiffTask extends AsyncTask<Void, Void, ForecastDiff> {
+        private final List<ForecastRow> mOldRows;
+        private final List<ForecastRow> mNewRows;
+        private final int mJulianDay;
+        private PositionIndex mNewIndex;
+
+        DiffTask(List<ForecastRow> oldRows, List<ForecastRow> newRows, int julianDay) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+            mJulianDay = julianDay;
+        }
+
+        @Override
+        protected ForecastDiff doInBackground(Void... params) {
+            mNewIndex = PositionIndex.build(mNewRows);
+            return ForecastDiff.compute(mOldRows, mNewRows, mUseTodayLayout);
+        }
+
+        @Override
+        protected void onPostExecute(ForecastDiff diff) {
+            if (mPendingDiff != this) {
+                return;
+            }
+            mPendingDiff = null;
+            setRows(mNewRows, mNewIndex, mJulianDay);
+            diff.dispatchTo(ForecastAdapter.this);
+        }
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
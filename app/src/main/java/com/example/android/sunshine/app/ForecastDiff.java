@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The item-level changes needed to turn one list of {@link ForecastRow}s into another, matching
+ * rows by date.
+ * <p>
+ * Computing the changes doesn't touch any views, so it can be done off the UI thread.  The
+ * result is then replayed on the UI thread as insert, remove, move and change notifications so
+ * that only the rows that actually changed get rebound.
+ */
+final class ForecastDiff {
+
+    /**
+     * Receives the changes in the order they must be applied.  Positions are relative to the
+     * list as it stands after the previous changes.
+     */
+    interface Callback {
+        void onInserted(int position);
+
+        void onRemoved(int position);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position);
+    }
+
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    // Each operation is stored as three ints: type, first position, second position.
+    private final int[] mOperations;
+    private final int mCount;
+
+    private ForecastDiff(int[] operations, int count) {
+        mOperations = operations;
+        mCount = count;
+    }
+
+    /**
+     * @param oldRows The rows currently displayed
+     * @param newRows The rows to display
+     * @param rebindFirstRow true if the first row is laid out differently from the others, in
+     *                       which case rows moving to or from the first position are rebound
+     */
+    static ForecastDiff compute(List<ForecastRow> oldRows, List<ForecastRow> newRows,
+                                boolean rebindFirstRow) {
+        LongSparseArray<ForecastRow> oldByDate = new LongSparseArray<ForecastRow>(oldRows.size());
+        for (ForecastRow row : oldRows) {
+            oldByDate.put(row.getDate(), row);
+        }
+        LongSparseArray<ForecastRow> newByDate = new LongSparseArray<ForecastRow>(newRows.size());
+        for (ForecastRow row : newRows) {
+            newByDate.put(row.getDate(), row);
+        }
+
+        Operations operations = new Operations();
+
+        // Working copy of the dates as displayed while the operations are applied.
+        List<Long> current = new ArrayList<Long>(oldRows.size());
+        for (ForecastRow row : oldRows) {
+            current.add(row.getDate());
+        }
+
+        // Removals first, from the end so earlier positions stay valid.
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (newByDate.get(current.get(i)) == null) {
+                operations.add(REMOVE, i, 0);
+                current.remove(i);
+            }
+        }
+
+        // Then walk the new list, moving or inserting whatever isn't already in place.
+        for (int i = 0; i < newRows.size(); i++) {
+            long date = newRows.get(i).getDate();
+            if (i < current.size() && current.get(i) == date) {
+                continue;
+            }
+            if (oldByDate.get(date) != null) {
+                int from = current.indexOf(date);
+                operations.add(MOVE, from, i);
+                current.remove(from);
+                current.add(i, date);
+            } else {
+                operations.add(INSERT, i, 0);
+                current.add(i, date);
+            }
+        }
+
+        // Finally rebind the rows that kept their date but changed what they show.
+        long oldFirstDate = oldRows.isEmpty() ? Long.MIN_VALUE : oldRows.get(0).getDate();
+        for (int i = 0; i < newRows.size(); i++) {
+            ForecastRow newRow = newRows.get(i);
+            ForecastRow oldRow = oldByDate.get(newRow.getDate());
+            if (oldRow == null) {
+                continue;
+            }
+            boolean firstRowChanged = rebindFirstRow
+                    && (i == 0) != (newRow.getDate() == oldFirstDate);
+            if (firstRowChanged || !oldRow.hasSameContents(newRow)) {
+                operations.add(CHANGE, i, 0);
+            }
+        }
+        return new ForecastDiff(operations.mValues, operations.mCount);
+    }
+
+    /**
+     * @return the number of insert, remove, move and change operations
+     */
+    int size() {
+        return mCount / 3;
+    }
+
+    void dispatchTo(Callback callback) {
+        for (int i = 0; i < mCount; i += 3) {
+            int from = mOperations[i + 1];
+            switch (mOperations[i]) {
+                case INSERT:
+                    callback.onInserted(from);
+                    break;
+                case REMOVE:
+                    callback.onRemoved(from);
+                    break;
+                case MOVE:
+                    callback.onMoved(from, mOperations[i + 2]);
+                    break;
+                case CHANGE:
+                    callback.onChanged(from);
+                    break;
+            }
+        }
+    }
+
+    void dispatchTo(final RecyclerView.Adapter adapter) {
+        dispatchTo(new Callback() {
+            @Override
+            public void onInserted(int position) {
+                adapter.notifyItemInserted(position);
+            }
+
+            @Override
+            public void onRemoved(int position) {
+                adapter.notifyItemRemoved(position);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                adapter.notifyItemMoved(fromPosition, toPosition);
+            }
+
+            @Override
+            public void onChanged(int position) {
+                adapter.notifyItemChanged(position);
+            }
+        });
+    }
+
+    private static class Operations {
+        int[] mValues = new int[24];
+        int mCount;
+
+        void add(int type, int first, int second) {
+            if (mCount + 3 > mValues.length) {
+                int[] values = new int[mValues.length * 2];
+                System.arraycopy(mValues, 0, values, 0, mCount);
+                mValues = values;
+            }
+            mValues[mCount++] = type;
+            mValues[mCount++] = first;
+            mValues[mCount++] = second;
+        }
+    }
+}
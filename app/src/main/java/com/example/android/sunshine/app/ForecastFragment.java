@@ -48,10 +48,13 @@ import android.widget.TextView;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.List;
+
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener,
+        PresentationInvalidator.Listener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -260,9 +263,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             getActivity().supportPostponeEnterTransition();
         }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
+        // Registered for as long as the list exists, so it is current when the user comes back
+        // from the settings.
+        PresentationInvalidator.registerListener(this);
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        PresentationInvalidator.unregisterListener(this);
+        super.onDestroyView();
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
@@ -273,11 +285,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            if (mForecastAdapter.getItemCount() > 0) {
+                ForecastRow row = mForecastAdapter.getRow(0);
+                String posLat = row.getCoordLat();
+                String posLong = row.getCoordLong();
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -326,7 +337,17 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+        List<ForecastRow> rows = ForecastRow.fromCursor(data);
+        mForecastAdapter.swapRows(rows);
+        // Share the rows with a detail view on the same screen, so it doesn't query them again.
+        // They are labelled with the location they were queried for, which may no longer be
+        // the preferred one if it changed during the load.
+        if (getActivity() instanceof ForecastRepository.Owner) {
+            String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(
+                    ((CursorLoader) loader).getUri());
+            ((ForecastRepository.Owner) getActivity()).getForecastRepository()
+                    .publish(locationSetting, rows);
+        }
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -341,16 +362,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
+                            position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
                         // If we don't need to restart the loader, and there's a desired position to restore
@@ -435,4 +447,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             updateEmptyView();
         }
     }
+
+    @Override
+    public void onPresentationChanged() {
+        // The adapter formats temperatures and picks art as it binds, so the loaded rows only
+        // need to be bound again.
+        mForecastAdapter.notifyDataSetChanged();
+    }
 }
\ No newline at end of file
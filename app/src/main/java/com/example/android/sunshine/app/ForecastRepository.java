@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory copy of the forecast most recently loaded by the {@link ForecastFragment}, shared
+ * with the {@link DetailFragment} shown next to it on tablets so that selecting a day doesn't
+ * query the database again for data that is already on screen.
+ * <p>
+ * The list only holds the columns it displays.  The extra columns shown by the detail view are
+ * cached here once loaded, and dropped whenever a new forecast is published.
+ * <p>
+ * A repository belongs to the activity hosting both fragments, and must only be used from the
+ * UI thread.
+ */
+public class ForecastRepository {
+
+    /**
+     * Implemented by activities that share a repository between their fragments.
+     */
+    public interface Owner {
+        ForecastRepository getForecastRepository();
+    }
+
+    /**
+     * Notified on the UI thread whenever a new forecast is published.
+     */
+    public interface Observer {
+        void onForecastChanged(ForecastRepository repository);
+    }
+
+    /**
+     * The detail columns that the forecast list doesn't load.
+     */
+    public static final class Extras {
+        private final float mHumidity;
+        private final float mPressure;
+        private final float mWindSpeed;
+        private final float mDegrees;
+
+        public Extras(float humidity, float pressure, float windSpeed, float degrees) {
+            mHumidity = humidity;
+            mPressure = pressure;
+            mWindSpeed = windSpeed;
+            mDegrees = degrees;
+        }
+
+        public float getHumidity() {
+            return mHumidity;
+        }
+
+        public float getPressure() {
+            return mPressure;
+        }
+
+        public float getWindSpeed() {
+            return mWindSpeed;
+        }
+
+        public float getDegrees() {
+            return mDegrees;
+        }
+    }
+
+    private String mLocationSetting;
+    private List<ForecastRow> mRows = Collections.emptyList();
+    private PositionIndex mIndex = PositionIndex.EMPTY;
+    private final LongSparseArray<Extras> mExtras = new LongSparseArray<Extras>();
+    private final List<Observer> mObservers = new ArrayList<Observer>();
+
+    /**
+     * Replaces the forecast and notifies the observers.
+     *
+     * @param locationSetting The location the rows were loaded for
+     * @param rows            The rows, in date order
+     */
+    public void publish(String locationSetting, List<ForecastRow> rows) {
+        mLocationSetting = locationSetting;
+        mRows = rows;
+        mIndex = PositionIndex.build(rows);
+        // The detail columns may have changed along with the rest of the row.
+        mExtras.clear();
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onForecastChanged(this);
+        }
+    }
+
+    /**
+     * @return the row for the given location and date, or null if it isn't loaded
+     */
+    public ForecastRow getRow(String locationSetting, long date) {
+        if (!TextUtils.equals(locationSetting, mLocationSetting)) {
+            return null;
+        }
+        int position = mIndex.getPosition(date);
+        return position == RecyclerView.NO_POSITION ? null : mRows.get(position);
+    }
+
+    /**
+     * @return the extra columns for the given date of the current forecast, or null if they
+     * haven't been loaded yet
+     */
+    public Extras getExtras(String locationSetting, long date) {
+        if (!TextUtils.equals(locationSetting, mLocationSetting)) {
+            return null;
+        }
+        return mExtras.get(date);
+    }
+
+    public void putExtras(String locationSetting, long date, Extras extras) {
+        if (TextUtils.equals(locationSetting, mLocationSetting)) {
+            mExtras.put(date, extras);
+        }
+    }
+
+    public void registerObserver(Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    public void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of one row of the forecast list, read from a cursor using the
+ * {@link ForecastFragment} projection.
+ * <p>
+ * Binding from these instead of the cursor lets the list keep showing the old data while the
+ * differences with a newly loaded cursor are worked out, even after the loader closes the old
+ * cursor.
+ */
+public final class ForecastRow {
+    private final long mId;
+    private final long mDate;
+    private final String mDescription;
+    private final double mMaxTemp;
+    private final double mMinTemp;
+    private final String mLocationSetting;
+    private final int mWeatherId;
+    private final String mCoordLat;
+    private final String mCoordLong;
+
+    ForecastRow(long id, long date, String description, double maxTemp, double minTemp,
+                String locationSetting, int weatherId, String coordLat, String coordLong) {
+        mId = id;
+        mDate = date;
+        mDescription = description;
+        mMaxTemp = maxTemp;
+        mMinTemp = minTemp;
+        mLocationSetting = locationSetting;
+        mWeatherId = weatherId;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+    }
+
+    /**
+     * Copies every row of a cursor returned for the {@link ForecastFragment} projection.
+     *
+     * @param cursor The cursor to copy, may be null
+     * @return the rows, in cursor order.  Empty if the cursor is null.
+     */
+    static List<ForecastRow> fromCursor(Cursor cursor) {
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+        List<ForecastRow> rows = new ArrayList<ForecastRow>(cursor.getCount());
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            rows.add(new ForecastRow(
+                    cursor.getLong(ForecastFragment.COL_WEATHER_ID),
+                    cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    cursor.getString(ForecastFragment.COL_WEATHER_DESC),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    cursor.getString(ForecastFragment.COL_LOCATION_SETTING),
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getString(ForecastFragment.COL_COORD_LAT),
+                    cursor.getString(ForecastFragment.COL_COORD_LONG)));
+        }
+        return rows;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * @return the normalized date of the forecast, which uniquely identifies the row for a
+     * location
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public double getMaxTemp() {
+        return mMaxTemp;
+    }
+
+    public double getMinTemp() {
+        return mMinTemp;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public String getCoordLat() {
+        return mCoordLat;
+    }
+
+    public String getCoordLong() {
+        return mCoordLong;
+    }
+
+    /**
+     * @return true if the two rows would be displayed identically
+     */
+    boolean hasSameContents(ForecastRow other) {
+        return mDate == other.mDate
+                && mWeatherId == other.mWeatherId
+                && Double.compare(mMaxTemp, other.mMaxTemp) == 0
+                && Double.compare(mMinTemp, other.mMinTemp) == 0
+                && TextUtils.equals(mDescription, other.mDescription)
+                && TextUtils.equals(mLocationSetting, other.mLocationSetting);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Per-thread cache of the formatters used by {@link Utility} to turn dates and temperatures
+ * into display strings.
+ * <p>
+ * {@link SimpleDateFormat} and {@link Formatter} are not thread-safe, so rather than locking
+ * each thread gets its own set.  A set is rebuilt the next time it is used after the default
+ * locale changes or after {@link #invalidate()} is called, which {@link InvalidationReceiver}
+ * does whenever the system locale or timezone changes.
+ */
+public final class FormatterRegistry {
+
+    // Bumped whenever the cached formatters may no longer match the system settings.
+    private static volatile int sGeneration;
+
+    private static final ThreadLocal<FormatterRegistry> sRegistry =
+            new ThreadLocal<FormatterRegistry>();
+
+    private final Locale mLocale;
+    private final int mGeneration;
+    private final TimeZone mTimeZone;
+
+    private final SimpleDateFormat mShortenedDateFormat;
+    private final SimpleDateFormat mDayFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+
+    private final StringBuilder mBuilder = new StringBuilder(16);
+    private final Formatter mFormatter;
+    private String mTemperatureFormat;
+
+    private FormatterRegistry(Locale locale, int generation) {
+        mLocale = locale;
+        mGeneration = generation;
+        mTimeZone = TimeZone.getDefault();
+        mShortenedDateFormat = newDateFormat("EEE MMM dd");
+        mDayFormat = newDateFormat("EEEE");
+        mMonthDayFormat = newDateFormat("MMMM dd");
+        mFormatter = new Formatter(mBuilder, locale);
+    }
+
+    private SimpleDateFormat newDateFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+
+    /**
+     * Returns the formatters for the calling thread, creating them if they don't exist yet or
+     * if they were built for a different locale or timezone.
+     */
+    public static FormatterRegistry get() {
+        FormatterRegistry registry = sRegistry.get();
+        Locale locale = Locale.getDefault();
+        int generation = sGeneration;
+        if (registry == null || registry.mGeneration != generation
+                || !registry.mLocale.equals(locale)) {
+            registry = new FormatterRegistry(locale, generation);
+            sRegistry.set(registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Drops the formatters of every thread.  Each thread lazily rebuilds its own set the next
+     * time it calls {@link #get()}.
+     */
+    public static void invalidate() {
+        sGeneration++;
+    }
+
+    /**
+     * @param timeInMillis The instant to compute the offset for
+     * @return the offset from GMT in seconds, in the form expected by
+     * {@link Time#getJulianDay(long, long)}
+     */
+    public long getGmtOffset(long timeInMillis) {
+        return mTimeZone.getOffset(timeInMillis) / 1000;
+    }
+
+    /**
+     * @return the date in the form "Mon Jun 3"
+     */
+    public String formatShortenedDate(long dateInMillis) {
+        return mShortenedDateFormat.format(dateInMillis);
+    }
+
+    /**
+     * @return the day of the week, e.g "Wednesday"
+     */
+    public String formatDayName(long dateInMillis) {
+        return mDayFormat.format(dateInMillis);
+    }
+
+    /**
+     * @return the date in the form "June 24"
+     */
+    public String formatMonthDay(long dateInMillis) {
+        return mMonthDayFormat.format(dateInMillis);
+    }
+
+    /**
+     * Formats a temperature with the {@code format_temperature} resource, which is only looked
+     * up the first time it is needed on this thread.
+     *
+     * @param context Context to use for resource localization
+     * @param temperature The temperature, already converted to the user's preferred units
+     */
+    public String formatTemperature(Context context, double temperature) {
+        if (mTemperatureFormat == null) {
+            mTemperatureFormat = context.getString(R.string.format_temperature);
+        }
+        mBuilder.setLength(0);
+        mFormatter.format(mTemperatureFormat, temperature);
+        return mBuilder.toString();
+    }
+
+    /**
+     * Invalidates the cached formatters when the user changes the system locale or timezone.
+     */
+    public static class InvalidationReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    }
+}
@@ -24,12 +24,14 @@ import android.os.Bundle;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
+import com.example.android.sunshine.app.sync.ForecastDeltaService;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 
 public class GcmBroadcastReceiver extends BroadcastReceiver {
     private final String LOG_TAG = BroadcastReceiver.class.getSimpleName();
 
     private static final String EXTRA_SENDER = "from";
+    private static final String EXTRA_TYPE = "type";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
 
@@ -56,12 +58,18 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
             if (GoogleCloudMessaging.MESSAGE_TYPE_MESSAGE.equals(messageType)) {
                 // Is this our message?? Better be if you're going to act on it!
                 if (MainActivity.PROJECT_NUMBER.equals(extras.getString(EXTRA_SENDER))) {
-                    // Process message and then post a notification of the received message.
-                    String weather = extras.getString(EXTRA_WEATHER);
-                    String location = extras.getString(EXTRA_LOCATION);
-                    String alert = "Heads up: " + weather + " in " + location + "!";
+                    if (ForecastDeltaService.MESSAGE_TYPE_FORECAST_DELTA.equals(
+                            extras.getString(EXTRA_TYPE))) {
+                        // Forecast changes are applied to the database, without a notification.
+                        ForecastDeltaService.start(context, extras);
+                    } else {
+                        // Process message and then post a notification of the received message.
+                        String weather = extras.getString(EXTRA_WEATHER);
+                        String location = extras.getString(EXTRA_LOCATION);
+                        String alert = "Heads up: " + weather + " in " + location + "!";
 
-                    sendNotification(context, alert);
+                        sendNotification(context, alert);
+                    }
                 }
 
                 Log.i(LOG_TAG, "Received: " + extras.toString());
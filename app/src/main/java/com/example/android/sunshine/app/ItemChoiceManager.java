@@ -28,8 +28,10 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  It observes
+ * the adapter it is created with, and when the data changes or items are inserted, removed or
+ * moved it finds the checked items again by their stable IDs, using {@link PositionLookup} if
+ * the adapter implements it.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,6 +46,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Item-level changes can shift the checked items, so re-find them by ID as well.
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +71,19 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
+    }
+
+    /**
+     * Implemented by adapters that can find the position of an item ID without searching, which
+     * lets checked items be restored in constant time however far they moved.
+     */
+    public interface PositionLookup {
+        /**
+         * @return the position of the item with the given ID, or
+         * {@link RecyclerView#NO_POSITION} if it is no longer in the adapter
+         */
+        int getPositionForId(long id);
     }
 
     /**
@@ -163,7 +194,16 @@ public class ItemChoiceManager {
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
             final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
+            if (id != lastPosId && mAdapter instanceof PositionLookup) {
+                final int newPos = ((PositionLookup) mAdapter).getPositionForId(id);
+                if (newPos != RecyclerView.NO_POSITION) {
+                    mCheckStates.put(newPos, true);
+                    mCheckedIdStates.setValueAt(checkedIndex, newPos);
+                } else {
+                    mCheckedIdStates.delete(id);
+                    checkedIndex--;
+                }
+            } else if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
                 final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
@@ -24,12 +24,23 @@ import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
+
+import com.example.android.sunshine.app.sync.ForecastStaging;
 
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    static final private int MAX_SUGGESTIONS = 4;
     private int mMinLength;
+    private CityIndex mCityIndex;
+    private ArrayAdapter<String> mSuggestionsAdapter;
+    private final String[] mSuggestions = new String[MAX_SUGGESTIONS];
 
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -45,6 +56,41 @@ public class LocationEditTextPreference extends EditTextPreference {
     }
 
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+        mCityIndex = CityIndex.get(getContext());
+
+        // List the known cities matching what has been typed so far below the text field.
+        mSuggestionsAdapter = new ArrayAdapter<String>(getContext(),
+                android.R.layout.simple_list_item_1);
+        ListView suggestionsView = new ListView(getContext());
+        suggestionsView.setAdapter(mSuggestionsAdapter);
+        suggestionsView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                EditText et = getEditText();
+                et.setText(mSuggestionsAdapter.getItem(position));
+                et.setSelection(et.length());
+            }
+        });
+        ((ViewGroup) editText.getParent()).addView(suggestionsView,
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+    }
+
+    private void updateSuggestions(String location) {
+        int count = mCityIndex.suggest(location, mSuggestions);
+        mSuggestionsAdapter.setNotifyOnChange(false);
+        mSuggestionsAdapter.clear();
+        for (int i = 0; i < count; i++) {
+            // No need to suggest what has already been typed in full.
+            if (!mSuggestions[i].equalsIgnoreCase(location)) {
+                mSuggestionsAdapter.add(mSuggestions[i]);
+            }
+        }
+        mSuggestionsAdapter.notifyDataSetChanged();
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
@@ -65,18 +111,29 @@ public class LocationEditTextPreference extends EditTextPreference {
 
             @Override
             public void afterTextChanged(Editable s) {
+                String location = s.toString().trim();
+                boolean valid = location.length() >= mMinLength;
+                boolean known = valid && mCityIndex.isKnownLocation(location);
+                if (valid && !known) {
+                    // The index only lists the larger cities, so this is a hint about possible
+                    // typos rather than a reason to refuse the location.
+                    getEditText().setError(getContext().getString(R.string.pref_location_not_found));
+                } else {
+                    getEditText().setError(null);
+                }
+                updateSuggestions(location);
+
                 Dialog d = getDialog();
                 if (d instanceof AlertDialog) {
                     AlertDialog dialog = (AlertDialog) d;
                     Button positiveButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
-                    // Check if the EditText is empty
-                    if (s.length() < mMinLength) {
-                        // Disable OK button
-                        positiveButton.setEnabled(false);
-                    } else {
-                        // Re-enable the button.
-                        positiveButton.setEnabled(true);
-                    }
+                    // Only allow locations that are long enough
+                    positiveButton.setEnabled(valid);
+                }
+                // Start fetching the forecast, so it's ready if the user confirms this location.
+                // Unknown names are left to the sync, rather than spending quota on every typo.
+                if (known && !location.equals(getText())) {
+                    ForecastStaging.prefetch(getContext(), location);
                 }
             }
         });
@@ -22,7 +22,6 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
@@ -35,6 +34,7 @@ import android.view.MenuItem;
 import android.view.View;
 
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.NotificationIconCache;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesUtil;
@@ -42,7 +42,8 @@ import com.google.android.gms.gcm.GoogleCloudMessaging;
 
 import java.io.IOException;
 
-public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
+public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback,
+        ForecastRepository.Owner {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private static final String DETAILFRAGMENT_TAG = "DFTAG";
@@ -59,6 +60,9 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private boolean mTwoPane;
     private String mLocation;
     private GoogleCloudMessaging mGcm;
+    private final ForecastRepository mForecastRepository = new ForecastRepository();
+    private final StartupOrchestrator mStartup = new StartupOrchestrator();
+    private boolean mResumedBefore;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -103,27 +107,89 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // Everything below is only needed once the cached forecast is on screen.
+        final Context appContext = getApplicationContext();
+        mStartup.add(StartupOrchestrator.DEFERRED, "sync account", new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncAdapter.initializeSyncAdapter(appContext);
+            }
+        });
+        mStartup.add(StartupOrchestrator.DEFERRED, "art pack", new Runnable() {
+            @Override
+            public void run() {
+                // The manager's state belongs to the UI thread; only the loading is backgrounded.
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        ArtPackManager.preload(appContext);
+                    }
+                });
+            }
+        });
+        mStartup.add(StartupOrchestrator.DEFERRED, "gcm", new Runnable() {
+            @Override
+            public void run() {
+                setUpGcm();
+            }
+        });
+        mStartup.add(StartupOrchestrator.IDLE, "notification icons", new Runnable() {
+            @Override
+            public void run() {
+                NotificationIconCache.warm(appContext);
+            }
+        });
+        mForecastRepository.registerObserver(new ForecastRepository.Observer() {
+            @Override
+            public void onForecastChanged(ForecastRepository repository) {
+                repository.unregisterObserver(this);
+                mStartup.onFirstData();
+            }
+        });
+        mStartup.start(getWindow().getDecorView());
+    }
 
+    /**
+     * Checks for Google Play Services and registers with GCM if needed.  Runs on a background
+     * thread, and posts anything it has to show back to the UI thread.
+     */
+    private void setUpGcm() {
         // If Google Play Services is not available, some features, such as GCM-powered weather
         // alerts, will not be available.
-        if (checkPlayServices()) {
-            mGcm = GoogleCloudMessaging.getInstance(this);
-            String regId = getRegistrationId(this);
-
-            if (PROJECT_NUMBER.equals("Your Project Number")) {
-                new AlertDialog.Builder(this)
-                .setTitle("Needs Project Number")
-                .setMessage("GCM will not function in Sunshine until you set the Project Number to the one from the Google Developers Console.")
-                .setPositiveButton(android.R.string.ok, null)
-                .create().show();
-            } else if (regId.isEmpty()) {
-                registerInBackground(this);
-            }
-        } else {
+        final int resultCode = GooglePlayServicesUtil.isGooglePlayServicesAvailable(this);
+        if (resultCode != ConnectionResult.SUCCESS) {
             Log.i(LOG_TAG, "No valid Google Play Services APK. Weather alerts will be disabled.");
             // Store regID as null
             storeRegistrationId(this, null);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isFinishing()) {
+                        onPlayServicesUnavailable(resultCode);
+                    }
+                }
+            });
+            return;
+        }
+
+        mGcm = GoogleCloudMessaging.getInstance(this);
+        String regId = getRegistrationId(this);
+
+        if (PROJECT_NUMBER.equals("Your Project Number")) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isFinishing()) {
+                        new AlertDialog.Builder(MainActivity.this)
+                        .setTitle("Needs Project Number")
+                        .setMessage("GCM will not function in Sunshine until you set the Project Number to the one from the Google Developers Console.")
+                        .setPositiveButton(android.R.string.ok, null)
+                        .create().show();
+                    }
+                }
+            });
+        } else if (regId.isEmpty()) {
+            register(this);
         }
     }
 
@@ -154,10 +220,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         super.onResume();
 
         // If Google Play Services is not available, some features, such as GCM-powered weather
-        // alerts, will not be available.
-        if (!checkPlayServices()) {
+        // alerts, will not be available.  The first check is made in the background by setUpGcm.
+        if (mResumedBefore && !checkPlayServices()) {
             // Store regID as null
         }
+        mResumedBefore = true;
 
         String location = Utility.getPreferredLocation(this);
         // update the location in our second pane using the fragment manager
@@ -174,6 +241,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    @Override
+    public ForecastRepository getForecastRepository() {
+        return mForecastRepository;
+    }
+
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
@@ -208,18 +280,22 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private boolean checkPlayServices() {
         int resultCode = GooglePlayServicesUtil.isGooglePlayServicesAvailable(this);
         if (resultCode != ConnectionResult.SUCCESS) {
-            if (GooglePlayServicesUtil.isUserRecoverableError(resultCode)) {
-                GooglePlayServicesUtil.getErrorDialog(resultCode, this,
-                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
-            } else {
-                Log.i(LOG_TAG, "This device is not supported.");
-                finish();
-            }
+            onPlayServicesUnavailable(resultCode);
             return false;
         }
         return true;
     }
 
+    private void onPlayServicesUnavailable(int resultCode) {
+        if (GooglePlayServicesUtil.isUserRecoverableError(resultCode)) {
+            GooglePlayServicesUtil.getErrorDialog(resultCode, this,
+                    PLAY_SERVICES_RESOLUTION_REQUEST).show();
+        } else {
+            Log.i(LOG_TAG, "This device is not supported.");
+            finish();
+        }
+    }
+
     /**
      * Gets the current registration ID for application on GCM service.
      * <p>
@@ -273,43 +349,37 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     }
 
     /**
-     * Registers the application with GCM servers asynchronously.
+     * Registers the application with GCM servers.  Must not be called on the UI thread.
      * <p>
      * Stores the registration ID and app versionCode in the application's
      * shared preferences.
      */
-    private void registerInBackground(final Context context) {
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                String msg = "";
-                try {
-                    if (mGcm == null) {
-                        mGcm = GoogleCloudMessaging.getInstance(context);
-                    }
-                    String regId = mGcm.register(PROJECT_NUMBER);
-                    msg = "Device registered, registration ID=" + regId;
-
-                    // You should send the registration ID to your server over HTTP,
-                    // so it can use GCM/HTTP or CCS to send messages to your app.
-                    // The request to your server should be authenticated if your app
-                    // is using accounts.
-                    //sendRegistrationIdToBackend();
-                    // For this demo: we don't need to send it because the device
-                    // will send upstream messages to a server that echo back the
-                    // message using the 'from' address in the message.
-
-                    // Persist the registration ID - no need to register again.
-                    storeRegistrationId(context, regId);
-                } catch (IOException ex) {
-                    msg = "Error :" + ex.getMessage();
-                    // TODO: If there is an error, don't just keep trying to register.
-                    // Require the user to click a button again, or perform
-                    // exponential back-off.
-                }
-                return null;
+    private void register(Context context) {
+        String msg = "";
+        try {
+            if (mGcm == null) {
+                mGcm = GoogleCloudMessaging.getInstance(context);
             }
-        }.execute(null, null, null);
+            String regId = mGcm.register(PROJECT_NUMBER);
+            msg = "Device registered, registration ID=" + regId;
+
+            // You should send the registration ID to your server over HTTP,
+            // so it can use GCM/HTTP or CCS to send messages to your app.
+            // The request to your server should be authenticated if your app
+            // is using accounts.
+            //sendRegistrationIdToBackend();
+            // For this demo: we don't need to send it because the device
+            // will send upstream messages to a server that echo back the
+            // message using the 'from' address in the message.
+
+            // Persist the registration ID - no need to register again.
+            storeRegistrationId(context, regId);
+        } catch (IOException ex) {
+            msg = "Error :" + ex.getMessage();
+            // TODO: If there is an error, don't just keep trying to register.
+            // Require the user to click a button again, or perform
+            // exponential back-off.
+        }
     }
 
     /**
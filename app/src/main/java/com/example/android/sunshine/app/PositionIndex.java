@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Immutable map from a row's date to its position in the list, built once when the data
+ * loads so that finding a row doesn't require scanning the list.
+ * <p>
+ * Uses open addressing over primitive arrays, so lookups don't box the key or allocate.
+ */
+final class PositionIndex {
+    static final PositionIndex EMPTY = new PositionIndex(new long[1], new int[1]);
+
+    private final long[] mKeys;
+    // Position + 1 for each slot, so that 0 marks an empty slot.
+    private final int[] mPositions;
+    private final int mMask;
+
+    private PositionIndex(long[] keys, int[] positions) {
+        mKeys = keys;
+        mPositions = positions;
+        mMask = keys.length - 1;
+    }
+
+    /**
+     * @param rows The rows, in list order
+     */
+    static PositionIndex build(List<ForecastRow> rows) {
+        int size = rows.size();
+        if (size == 0) {
+            return EMPTY;
+        }
+        // Keep the table at most half full so probe sequences stay short.
+        int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+        long[] keys = new long[capacity];
+        int[] positions = new int[capacity];
+        int mask = capacity - 1;
+        for (int position = 0; position < size; position++) {
+            long key = rows.get(position).getDate();
+            int slot = hash(key) & mask;
+            while (positions[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (positions[slot] == 0) {
+                keys[slot] = key;
+                positions[slot] = position + 1;
+            }
+        }
+        return new PositionIndex(keys, positions);
+    }
+
+    /**
+     * @param date The date of the row to find
+     * @return the position of the first row with that date, or
+     * {@link RecyclerView#NO_POSITION} if there is none
+     */
+    int getPosition(long date) {
+        int slot = hash(date) & mMask;
+        int position;
+        while ((position = mPositions[slot]) > 0) {
+            if (mKeys[slot] == date) {
+                return position - 1;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    private static int hash(long key) {
+        // Dates are multiples of a day, so mix the high bits into the low ones.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
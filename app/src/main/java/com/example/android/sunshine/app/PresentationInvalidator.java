@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells views that the way weather is displayed changed, such as the temperature units or the
+ * art pack, while the weather itself did not.
+ * <p>
+ * Listeners rebind from the rows they already have instead of querying them again, so
+ * provider notifications are kept for actual data changes.  Everything happens on the UI
+ * thread.
+ */
+public final class PresentationInvalidator {
+
+    public interface Listener {
+        /**
+         * Called on the UI thread when formatting or art settings change.
+         */
+        void onPresentationChanged();
+    }
+
+    private static final List<Listener> sListeners = new ArrayList<Listener>();
+
+    private PresentationInvalidator() {
+    }
+
+    public static void registerListener(Listener listener) {
+        if (!sListeners.contains(listener)) {
+            sListeners.add(listener);
+        }
+    }
+
+    public static void unregisterListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Asks every listener to rebind.  Must be called on the UI thread.
+     */
+    static void invalidate() {
+        // Iterate backwards so listeners can unregister themselves.
+        for (int i = sListeners.size() - 1; i >= 0; i--) {
+            sListeners.get(i).onPresentationChanged();
+        }
+    }
+}
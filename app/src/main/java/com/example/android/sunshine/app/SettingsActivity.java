@@ -25,7 +25,7 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ForecastStaging;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -50,6 +50,8 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_alert_temperature_swing_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_alert_wind_key)));
     }
 
     // Registers a shared preference change listener that gets notified when preferences change
@@ -135,18 +137,17 @@ public class SettingsActivity extends PreferenceActivity
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
-        } else if ( key.equals(getString(R.string.pref_units_key)) ) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // Use the forecast fetched while the location was typed, if there is one.
+            if (!ForecastStaging.promote(this, sharedPreferences.getString(key, "").trim())) {
+                SunshineSyncAdapter.syncImmediately(this);
+            }
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
-        } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
+        // Units and art pack changes are handled by PresentationInvalidator, since the weather
+        // data itself didn't change.
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.NotificationIconCache;
+
+/**
+ * Immutable copy of the user settings that are read while binding views, updating widgets and
+ * syncing.
+ * <p>
+ * A single process-wide {@link SharedPreferences.OnSharedPreferenceChangeListener} replaces the
+ * current snapshot whenever a preference changes, so callers only read a volatile field instead
+ * of going through {@link PreferenceManager} and resolving the key strings every time.
+ */
+public final class SettingsSnapshot {
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only keeps weak references to its listeners, so hold on to ours.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final String mLocation;
+    private final boolean mMetric;
+    private final String mArtPackFormat;
+    private final boolean mUsingLocalGraphics;
+    private final boolean mNotificationsEnabled;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPackFormat = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        mUsingLocalGraphics = mArtPackFormat.equals(sunshineArtPack);
+
+        mNotificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * Returns the current settings, reading them from the default shared preferences and
+     * starting to listen for changes the first time it is called.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot current = sCurrent;
+        if (current == null) {
+            current = initialize(context);
+        }
+        return current;
+    }
+
+    private static synchronized SettingsSnapshot initialize(Context context) {
+        if (sCurrent == null) {
+            final Context appContext = context.getApplicationContext();
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    SettingsSnapshot previous = sCurrent;
+                    sCurrent = new SettingsSnapshot(appContext, sharedPreferences);
+                    boolean artPackChanged =
+                            !sCurrent.mArtPackFormat.equals(previous.mArtPackFormat);
+                    if (artPackChanged) {
+                        // Get the new art ready for the list and the next notification.
+                        ArtPackManager.preload(appContext);
+                        NotificationIconCache.warm(appContext);
+                    }
+                    if (artPackChanged || sCurrent.mMetric != previous.mMetric) {
+                        // Only the display changed, so views rebind without reloading.
+                        PresentationInvalidator.invalidate();
+                    }
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sCurrent = new SettingsSnapshot(appContext, prefs);
+        }
+        return sCurrent;
+    }
+
+    /**
+     * @return the location the user wants to see the forecast for
+     */
+    public String getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * @return true if temperatures should be displayed in Celsius
+     */
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the format used to build art urls for the selected art pack
+     */
+    public String getArtPackFormat() {
+        return mArtPackFormat;
+    }
+
+    /**
+     * @return true if Sunshine is using the art bundled with the app
+     */
+    public boolean usingLocalGraphics() {
+        return mUsingLocalGraphics;
+    }
+
+    /**
+     * @return true if the daily weather notification is enabled
+     */
+    public boolean notificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the work an activity needs at startup in stages, so that only what the first frame
+ * depends on happens before it is drawn.
+ * <ul>
+ * <li>{@link #CRITICAL} tasks run immediately, on the calling thread.</li>
+ * <li>{@link #DEFERRED} tasks run in order on a background thread once the first frame has
+ * been drawn.</li>
+ * <li>{@link #IDLE} tasks run on the same background thread after the deferred ones, once the
+ * UI thread has nothing left to do.</li>
+ * </ul>
+ * It also logs how long the first frame and the first data took, counted from when the
+ * orchestrator was created.
+ */
+final class StartupOrchestrator {
+    private static final String LOG_TAG = StartupOrchestrator.class.getSimpleName();
+
+    static final int CRITICAL = 0;
+    static final int DEFERRED = 1;
+    static final int IDLE = 2;
+
+    // Shared by every activity, so startup work never runs twice at once.
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final long mStartMillis = SystemClock.uptimeMillis();
+    private final List<Runnable> mDeferred = new ArrayList<Runnable>();
+    private final List<Runnable> mIdle = new ArrayList<Runnable>();
+    private long mFirstFrameMillis = -1;
+    private long mFirstDataMillis = -1;
+
+    /**
+     * @param stage One of {@link #CRITICAL}, {@link #DEFERRED} or {@link #IDLE}
+     * @param name  Used when logging how long the task took
+     */
+    void add(int stage, final String name, final Runnable task) {
+        Runnable timed = new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.uptimeMillis();
+                task.run();
+                Log.d(LOG_TAG, "Startup task " + name + " took "
+                        + (SystemClock.uptimeMillis() - start) + "ms");
+            }
+        };
+        switch (stage) {
+            case CRITICAL:
+                timed.run();
+                break;
+            case DEFERRED:
+                mDeferred.add(timed);
+                break;
+            default:
+                mIdle.add(timed);
+                break;
+        }
+    }
+
+    /**
+     * Waits for the first frame of the view's window to be drawn, then starts the deferred
+     * and idle tasks.  Must be called on the UI thread.
+     */
+    void start(final View root) {
+        root.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from the pre-draw pass, this runs once the frame has been drawn.
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFirstFrame();
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Records that the first data has been shown.  Only the first call is recorded.
+     */
+    void onFirstData() {
+        if (mFirstDataMillis == -1) {
+            mFirstDataMillis = SystemClock.uptimeMillis() - mStartMillis;
+            Log.i(LOG_TAG, "Time to first data: " + mFirstDataMillis + "ms");
+        }
+    }
+
+    private void onFirstFrame() {
+        mFirstFrameMillis = SystemClock.uptimeMillis() - mStartMillis;
+        Log.i(LOG_TAG, "Time to first frame: " + mFirstFrameMillis + "ms");
+
+        for (Runnable task : mDeferred) {
+            sExecutor.execute(task);
+        }
+        mDeferred.clear();
+
+        final List<Runnable> idle = new ArrayList<Runnable>(mIdle);
+        mIdle.clear();
+        if (idle.isEmpty()) {
+            return;
+        }
+        // Queued behind the deferred tasks, so the idle ones only start after they finish.
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                            @Override
+                            public boolean queueIdle() {
+                                for (Runnable task : idle) {
+                                    sExecutor.execute(task);
+                                }
+                                return false;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+}
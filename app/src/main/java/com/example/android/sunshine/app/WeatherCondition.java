@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * Everything Sunshine displays for an OpenWeatherMap weather condition id: the list icon, the
+ * art, the art pack image name, the Muzei image and the description.
+ * <p>
+ * The descriptors are built once into a table indexed by condition id, so looking up all of
+ * the attributes for a forecast is a single array access.
+ */
+public final class WeatherCondition {
+
+    // Based on weather code data found at:
+    // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+    private static final int MIN_ID = 200;
+    private static final int MAX_ID = 962;
+
+    private static final WeatherCondition[] sConditions = buildTable();
+
+    private final int mWeatherId;
+    private final int mIconResId;
+    private final int mArtResId;
+    private final String mArtName;
+    private final String mImageUrl;
+    private final int mDescriptionResId;
+
+    // The last art url built for this condition, along with the art pack format used.
+    private volatile String[] mArtUrl;
+
+    private WeatherCondition(int weatherId, int iconResId, int artResId, String artName,
+                             String imageUrl, int descriptionResId) {
+        mWeatherId = weatherId;
+        mIconResId = iconResId;
+        mArtResId = artResId;
+        mArtName = artName;
+        mImageUrl = imageUrl;
+        mDescriptionResId = descriptionResId;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the descriptor for the condition.  Never null: unknown ids get a descriptor with
+     * no icon, art or image.
+     */
+    public static WeatherCondition forId(int weatherId) {
+        if (weatherId >= MIN_ID && weatherId <= MAX_ID) {
+            return sConditions[weatherId - MIN_ID];
+        }
+        return new WeatherCondition(weatherId, -1, -1, null, null, 0);
+    }
+
+    /**
+     * @return resource id for the list icon. -1 if no relation is found.
+     */
+    public int getIconResId() {
+        return mIconResId;
+    }
+
+    /**
+     * @return resource id for the bundled art. -1 if no relation is found.
+     */
+    public int getArtResId() {
+        return mArtResId;
+    }
+
+    /**
+     * @return the name used by art packs for this condition, e.g "light_rain". null if no
+     * relation is found.
+     */
+    public String getArtName() {
+        return mArtName;
+    }
+
+    /**
+     * @param context Context to use for retrieving the art pack
+     * @return url for the weather artwork in the selected art pack. null if no relation is found.
+     */
+    public String getArtUrl(Context context) {
+        if (mArtName == null) {
+            return null;
+        }
+        String format = SettingsSnapshot.get(context).getArtPackFormat();
+        String[] artUrl = mArtUrl;
+        if (artUrl == null || !artUrl[0].equals(format)) {
+            artUrl = new String[]{format, String.format(Locale.US, format, mArtName)};
+            mArtUrl = artUrl;
+        }
+        return artUrl[1];
+    }
+
+    /**
+     * @return A string URL to an appropriate Muzei image or null if no mapping is found
+     */
+    public String getImageUrl() {
+        return mImageUrl;
+    }
+
+    /**
+     * @param context Android context
+     * @return the localized description of the condition
+     */
+    public String getDescription(Context context) {
+        if (mDescriptionResId == 0) {
+            return context.getString(R.string.condition_unknown, mWeatherId);
+        }
+        return context.getString(mDescriptionResId);
+    }
+
+    private static WeatherCondition[] buildTable() {
+        int size = MAX_ID - MIN_ID + 1;
+        int[] icons = new int[size];
+        int[] art = new int[size];
+        String[] artNames = new String[size];
+        String[] imageUrls = new String[size];
+        int[] descriptions = new int[size];
+
+        // Earlier ranges win where they overlap, e.g. 761 is fog rather than storm.
+        addArt(icons, art, artNames, imageUrls, 200, 232,
+                R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg");
+        addArt(icons, art, artNames, imageUrls, 300, 321,
+                R.drawable.ic_light_rain, R.drawable.art_light_rain, "light_rain",
+                "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg");
+        addArt(icons, art, artNames, imageUrls, 500, 504,
+                R.drawable.ic_rain, R.drawable.art_rain, "rain",
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+        addArt(icons, art, artNames, imageUrls, 511, 511,
+                R.drawable.ic_snow, R.drawable.art_snow, "snow",
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+        addArt(icons, art, artNames, imageUrls, 520, 531,
+                R.drawable.ic_rain, R.drawable.art_rain, "rain",
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+        addArt(icons, art, artNames, imageUrls, 600, 622,
+                R.drawable.ic_snow, R.drawable.art_snow, "snow",
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+        addArt(icons, art, artNames, imageUrls, 701, 761,
+                R.drawable.ic_fog, R.drawable.art_fog, "fog",
+                "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg");
+        addArt(icons, art, artNames, imageUrls, 781, 781,
+                R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg");
+        addArt(icons, art, artNames, imageUrls, 800, 800,
+                R.drawable.ic_clear, R.drawable.art_clear, "clear",
+                "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg");
+        addArt(icons, art, artNames, imageUrls, 801, 801,
+                R.drawable.ic_light_clouds, R.drawable.art_light_clouds, "light_clouds",
+                "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg");
+        addArt(icons, art, artNames, imageUrls, 802, 804,
+                R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds",
+                "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg");
+
+        for (int id = 200; id <= 232; id++) {
+            descriptions[id - MIN_ID] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            descriptions[id - MIN_ID] = R.string.condition_3xx;
+        }
+        int[][] descriptionIds = {
+                {500, R.string.condition_500}, {501, R.string.condition_501},
+                {502, R.string.condition_502}, {503, R.string.condition_503},
+                {504, R.string.condition_504}, {511, R.string.condition_511},
+                {520, R.string.condition_520}, {531, R.string.condition_531},
+                {600, R.string.condition_600}, {601, R.string.condition_601},
+                {602, R.string.condition_602}, {611, R.string.condition_611},
+                {612, R.string.condition_612}, {615, R.string.condition_615},
+                {616, R.string.condition_616}, {620, R.string.condition_620},
+                {621, R.string.condition_621}, {622, R.string.condition_622},
+                {701, R.string.condition_701}, {711, R.string.condition_711},
+                {721, R.string.condition_721}, {731, R.string.condition_731},
+                {741, R.string.condition_741}, {751, R.string.condition_751},
+                {761, R.string.condition_761}, {762, R.string.condition_762},
+                {771, R.string.condition_771}, {781, R.string.condition_781},
+                {800, R.string.condition_800}, {801, R.string.condition_801},
+                {802, R.string.condition_802}, {803, R.string.condition_803},
+                {804, R.string.condition_804}, {900, R.string.condition_900},
+                {901, R.string.condition_901}, {902, R.string.condition_902},
+                {903, R.string.condition_903}, {904, R.string.condition_904},
+                {905, R.string.condition_905}, {906, R.string.condition_906},
+                {951, R.string.condition_951}, {952, R.string.condition_952},
+                {953, R.string.condition_953}, {954, R.string.condition_954},
+                {955, R.string.condition_955}, {956, R.string.condition_956},
+                {957, R.string.condition_957}, {958, R.string.condition_958},
+                {959, R.string.condition_959}, {960, R.string.condition_960},
+                {961, R.string.condition_961}, {962, R.string.condition_962}
+        };
+        for (int[] description : descriptionIds) {
+            descriptions[description[0] - MIN_ID] = description[1];
+        }
+
+        WeatherCondition[] table = new WeatherCondition[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = new WeatherCondition(MIN_ID + i,
+                    icons[i] != 0 ? icons[i] : -1,
+                    art[i] != 0 ? art[i] : -1,
+                    artNames[i], imageUrls[i], descriptions[i]);
+        }
+        return table;
+    }
+
+    private static void addArt(int[] icons, int[] art, String[] artNames, String[] imageUrls,
+                               int fromId, int toId, int iconResId, int artResId,
+                               String artName, String imageUrl) {
+        for (int id = fromId; id <= toId; id++) {
+            int i = id - MIN_ID;
+            if (artNames[i] == null) {
+                icons[i] = iconResId;
+                art[i] = artResId;
+                artNames[i] = artName;
+                imageUrls[i] = imageUrl;
+            }
+        }
+    }
+}
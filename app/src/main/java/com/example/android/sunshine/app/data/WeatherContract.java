@@ -21,6 +21,9 @@ import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.format.Time;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Defines table and column names for the weather database.
  */
@@ -43,6 +46,9 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    // Weather for several locations at once.  This is a separate top-level path, since
+    // anything under "weather/" would be taken for a location setting.
+    public static final String PATH_WEATHER_LOCATIONS = "weather_locations";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -149,6 +155,24 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Builds a URI for the weather of several locations from a start date on, joined with
+         * the location data.  Used to read the forecasts for every widget in one query.
+         */
+        public static Uri buildWeatherLocationsWithStartDate(
+                Collection<String> locationSettings, long startDate) {
+            Uri.Builder builder = BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER_LOCATIONS);
+            for (String locationSetting : locationSettings) {
+                builder.appendQueryParameter(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            }
+            return builder.appendQueryParameter(COLUMN_DATE,
+                    Long.toString(normalizeDate(startDate))).build();
+        }
+
+        public static List<String> getLocationSettingsFromUri(Uri uri) {
+            return uri.getQueryParameters(LocationEntry.COLUMN_LOCATION_SETTING);
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
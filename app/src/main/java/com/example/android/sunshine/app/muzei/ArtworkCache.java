@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Muzei artwork stored on the device, so that Muzei reads it through {@link ArtworkProvider}
+ * rather than downloading it again every time the wallpaper is published.
+ * <p>
+ * Files are named by a key and live in their own directory, which is trimmed to the most
+ * recently written {@link #MAX_FILES} files.  All methods do disk or network I/O, so they must
+ * not be called on the UI thread.
+ */
+public final class ArtworkCache {
+    private static final String LOG_TAG = ArtworkCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "muzei_artwork";
+    // Enough for every remote image plus a few rendered sizes.
+    private static final int MAX_FILES = 24;
+
+    private ArtworkCache() {
+    }
+
+    static File getDirectory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    /**
+     * @return true if the key can be used as a file name, which the provider also relies on
+     * so that it can't be made to serve files from anywhere else
+     */
+    static boolean isValidKey(String key) {
+        return key != null && key.matches("[a-z0-9_.]+") && !key.startsWith(".");
+    }
+
+    /**
+     * @return the file for the key, which may not exist yet
+     */
+    static File getFile(Context context, String key) {
+        return new File(getDirectory(context), key);
+    }
+
+    /**
+     * Makes sure the image at the URL is stored on the device.
+     *
+     * @return the URI to publish the image with, served from the device, or null if it
+     * couldn't be downloaded
+     */
+    public static Uri getLocalUri(Context context, String imageUrl) {
+        String key = "remote_" + Integer.toHexString(imageUrl.hashCode())
+                + "_" + Integer.toHexString(imageUrl.length());
+        File file = getFile(context, key);
+        if (!file.exists()) {
+            try {
+                File downloaded = Glide.with(context)
+                        .load(imageUrl)
+                        .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                        .get();
+                copy(downloaded, file);
+            } catch (InterruptedException | ExecutionException | IOException e) {
+                Log.e(LOG_TAG, "Error storing Muzei artwork from " + imageUrl, e);
+                return null;
+            }
+            trim(context);
+        }
+        return ArtworkProvider.buildArtworkUri(key);
+    }
+
+    /**
+     * Atomically replaces the file for the key with the given one.
+     */
+    static void copy(File source, File destination) throws IOException {
+        File directory = destination.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        // Write to a temporary file first so that Muzei never reads a partial image.
+        File temp = new File(directory, "." + destination.getName() + ".tmp");
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!temp.renameTo(destination)) {
+            temp.delete();
+            throw new IOException("Unable to write " + destination);
+        }
+    }
+
+    /**
+     * Deletes the oldest files once there are more than {@link #MAX_FILES}.
+     */
+    static void trim(Context context) {
+        File[] files = getDirectory(context).listFiles();
+        if (files == null || files.length <= MAX_FILES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+}
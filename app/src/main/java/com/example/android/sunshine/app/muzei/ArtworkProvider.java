@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Read-only provider serving the files in {@link ArtworkCache} to Muzei.  It is exported so
+ * that Muzei can open the artwork, but only hands out files from the artwork directory.
+ */
+public class ArtworkProvider extends ContentProvider {
+    public static final String AUTHORITY = "com.example.android.sunshine.app.muzei.artwork";
+    private static final String PATH_ARTWORK = "artwork";
+
+    static Uri buildArtworkUri(String key) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(PATH_ARTWORK)
+                .appendPath(key)
+                .build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Artwork is read-only: " + uri);
+        }
+        String key = uri.getLastPathSegment();
+        if (uri.getPathSegments().size() != 2 || !PATH_ARTWORK.equals(uri.getPathSegments().get(0))
+                || !ArtworkCache.isValidKey(key)) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        File file = ArtworkCache.getFile(getContext(), key);
+        if (!file.exists()) {
+            throw new FileNotFoundException("No artwork for " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/*";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Artwork is read-only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read-only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read-only: " + uri);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.v4.content.ContextCompat;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherCondition;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Draws a wallpaper for today's forecast on the device, so that Muzei has something to show
+ * when the photo for the condition can't be downloaded.
+ * <p>
+ * Each rendering is stored in {@link ArtworkCache} under a key made of the condition, the
+ * size, the locale and the text shown, so the same forecast is only drawn once.  Only one
+ * bitmap is alive at a time, in RGB_565 and no larger than {@link #MAX_DIMENSION} on a side.
+ * Must not be called on the UI thread.
+ */
+final class WeatherArtworkRenderer {
+    private static final String LOG_TAG = WeatherArtworkRenderer.class.getSimpleName();
+
+    // Keeps a rendering under 4MB, which is more than Muzei needs for a blurred background.
+    private static final int MAX_DIMENSION = 1440;
+
+    private static final Object sLock = new Object();
+
+    private WeatherArtworkRenderer() {
+    }
+
+    /**
+     * @return the URI of the rendered artwork, or null if it couldn't be rendered
+     */
+    static Uri render(Context context, int weatherId, double high, double low, String place) {
+        WeatherCondition condition = WeatherCondition.forId(weatherId);
+        String description = condition.getDescription(context);
+        String temperatures = Utility.formatTemperature(context, high) + " / "
+                + Utility.formatTemperature(context, low);
+
+        // Render for the screen in portrait, scaled down to the size limit
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int width = Math.min(metrics.widthPixels, metrics.heightPixels);
+        int height = Math.max(metrics.widthPixels, metrics.heightPixels);
+        if (height > MAX_DIMENSION) {
+            width = width * MAX_DIMENSION / height;
+            height = MAX_DIMENSION;
+        }
+
+        String conditionName = condition.getArtName() != null
+                ? condition.getArtName() : Integer.toString(weatherId);
+        String locale = Locale.getDefault().toString().toLowerCase(Locale.US)
+                .replaceAll("[^a-z0-9]", "");
+        int textHash = Arrays.hashCode(new Object[]{description, temperatures, place});
+        String key = "render_" + conditionName + "_" + width + "x" + height + "_" + locale
+                + "_" + Integer.toHexString(textHash);
+        if (!ArtworkCache.isValidKey(key)) {
+            return null;
+        }
+
+        File file = ArtworkCache.getFile(context, key);
+        // Muzei and the sync adapter may both ask for a rendering at the same time.
+        synchronized (sLock) {
+            if (!file.exists()) {
+                Bitmap bitmap;
+                try {
+                    bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+                } catch (OutOfMemoryError e) {
+                    Log.e(LOG_TAG, "Not enough memory to render Muzei artwork", e);
+                    return null;
+                }
+                try {
+                    draw(context, new Canvas(bitmap), width, height, condition, weatherId,
+                            place, description, temperatures);
+                    store(bitmap, file);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error storing rendered Muzei artwork", e);
+                    return null;
+                } finally {
+                    bitmap.recycle();
+                }
+                ArtworkCache.trim(context);
+            }
+        }
+        return ArtworkProvider.buildArtworkUri(key);
+    }
+
+    private static void draw(Context context, Canvas canvas, int width, int height,
+                             WeatherCondition condition, int weatherId, String place,
+                             String description, String temperatures) {
+        int[] colors = getSkyColors(weatherId);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new LinearGradient(0, 0, 0, height, colors[0], colors[1],
+                Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, width, height, paint);
+        paint.setShader(null);
+
+        // The bundled art for the condition, in the upper half
+        if (condition.getArtResId() != -1) {
+            Drawable art = ContextCompat.getDrawable(context, condition.getArtResId());
+            int artSize = width / 2;
+            int left = (width - artSize) / 2;
+            int top = height / 3 - artSize / 2;
+            art.setBounds(left, top, left + artSize, top + artSize);
+            art.draw(canvas);
+        }
+
+        paint.setColor(0xFFFFFFFF);
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setShadowLayer(width / 200f, 0, width / 400f, 0x66000000);
+        float y = height * 0.62f;
+        paint.setTextSize(width / 8f);
+        canvas.drawText(temperatures, width / 2f, y, paint);
+        y += width / 9f;
+        paint.setTextSize(width / 14f);
+        canvas.drawText(description, width / 2f, y, paint);
+        if (place != null) {
+            y += width / 10f;
+            paint.setTextSize(width / 18f);
+            canvas.drawText(place, width / 2f, y, paint);
+        }
+    }
+
+    /**
+     * @return the top and bottom colors of the background for a condition
+     */
+    private static int[] getSkyColors(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return new int[]{0xFF263238, 0xFF4A148C};   // Storm
+        } else if (weatherId >= 300 && weatherId <= 531) {
+            return new int[]{0xFF37474F, 0xFF607D8B};   // Drizzle and rain
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return new int[]{0xFF90A4AE, 0xFFCFD8DC};   // Snow
+        } else if (weatherId >= 701 && weatherId <= 781) {
+            return new int[]{0xFF78909C, 0xFFB0BEC5};   // Fog, dust and the like
+        } else if (weatherId == 800) {
+            return new int[]{0xFF0277BD, 0xFF4FC3F7};   // Clear
+        } else if (weatherId >= 801 && weatherId <= 804) {
+            return new int[]{0xFF455A64, 0xFF81D4FA};   // Clouds
+        }
+        return new int[]{0xFF455A64, 0xFF90A4AE};
+    }
+
+    private static void store(Bitmap bitmap, File file) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        File temp = new File(directory, "." + file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to write " + file);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import android.net.Uri;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.DataUpdateDispatcher;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
@@ -32,11 +33,17 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
 public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final String[] FORECAST_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME
     };
     // these indices must match the projection
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_CITY_NAME = 4;
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -47,7 +54,8 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
         super.onHandleIntent(intent);
         boolean dataUpdated = intent != null &&
                 SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
-        if (dataUpdated && isEnabled()) {
+        if (dataUpdated && isEnabled()
+                && DataUpdateDispatcher.markRendered(getClass().getName(), intent)) {
             onUpdate(UPDATE_REASON_OTHER);
         }
     }
@@ -62,17 +70,47 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
         if (cursor.moveToFirst()) {
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
             String desc = cursor.getString(INDEX_SHORT_DESC);
+            double high = cursor.getDouble(INDEX_MAX_TEMP);
+            double low = cursor.getDouble(INDEX_MIN_TEMP);
+            String cityName = cursor.getString(INDEX_CITY_NAME);
+            cursor.close();
 
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
+
+            // The token identifies what the artwork shows, so that a data update that doesn't
+            // change today's weather doesn't make Muzei load the same image again.  Rendered
+            // artwork also shows the temperatures.
+            String photoToken = weatherId + "|" + location;
+            String renderedToken = photoToken + "|" + Utility.formatTemperature(this, high)
+                    + "|" + Utility.formatTemperature(this, low);
+            Artwork currentArtwork = getCurrentArtwork();
+            if (reason == UPDATE_REASON_OTHER && currentArtwork != null) {
+                String currentToken = currentArtwork.getToken();
+                // Rendered artwork that stands in for a photo is replaced once the photo loads
+                if (photoToken.equals(currentToken)
+                        || (imageUrl == null && renderedToken.equals(currentToken))) {
+                    return;
+                }
+            }
+
+            String token = photoToken;
+            Uri imageUri = imageUrl != null ? ArtworkCache.getLocalUri(this, imageUrl) : null;
+            if (imageUri == null) {
+                // Offline, or there's no photo for this condition, so draw one instead
+                imageUri = WeatherArtworkRenderer.render(this, weatherId, high, low,
+                        cityName != null ? cityName : location);
+                token = renderedToken;
+            }
+            if (imageUri != null) {
                 publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
+                        .imageUri(imageUri)
                         .title(desc)
                         .byline(location)
+                        .token(token)
                         .viewIntent(new Intent(this, MainActivity.class))
                         .build());
             }
+            return;
         }
         cursor.close();
     }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tells the widgets and Muzei that the weather data changed, at most once per debounce window.
+ * <p>
+ * The first change in a window bumps a persisted data version and schedules an alarm for the
+ * end of the window; later changes in the same window are covered by that version.  Both the
+ * pending window and the alarm outlive the process, so the consumers are told even if it is
+ * killed before the window ends.  The version is sent along with
+ * {@link SunshineSyncAdapter#ACTION_DATA_UPDATED} so that consumers can skip a version they
+ * have already shown.
+ */
+public final class DataUpdateDispatcher {
+    private static final String LOG_TAG = DataUpdateDispatcher.class.getSimpleName();
+
+    /**
+     * Long extra of {@link SunshineSyncAdapter#ACTION_DATA_UPDATED} holding the data version.
+     */
+    public static final String EXTRA_DATA_VERSION =
+            "com.example.android.sunshine.app.extra.DATA_VERSION";
+
+    private static final String PREF_DATA_VERSION = "data_version";
+    // Wall clock time the waiting dispatch's window started, or 0 if none is waiting.
+    private static final String PREF_PENDING_SINCE = "data_update_pending_since";
+
+    private static final Map<String, Long> sRenderedVersions = new HashMap<String, Long>();
+
+    private DataUpdateDispatcher() {
+    }
+
+    /**
+     * Records that the weather data changed, and schedules the consumers to be told at the end
+     * of the debounce window unless a dispatch is already waiting.  Must not be called on the
+     * UI thread, since the pending window is committed to disk.
+     */
+    public static void onDataChanged(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        long window = appContext.getResources().getInteger(R.integer.data_update_debounce_millis);
+        long now = System.currentTimeMillis();
+        boolean dispatchNow;
+        synchronized (DataUpdateDispatcher.class) {
+            long pendingSince = prefs.getLong(PREF_PENDING_SINCE, 0);
+            if (pendingSince != 0 && now >= pendingSince && now - pendingSince < window) {
+                // The waiting dispatch will carry this change as well.
+                return;
+            }
+            SharedPreferences.Editor editor = prefs.edit()
+                    .putLong(PREF_DATA_VERSION, prefs.getLong(PREF_DATA_VERSION, 0) + 1);
+            // A window that should already have ended lost its alarm, e.g. to a reboot.
+            dispatchNow = window <= 0 || pendingSince != 0;
+            editor.putLong(PREF_PENDING_SINCE, dispatchNow ? 0 : now).commit();
+        }
+        if (dispatchNow) {
+            dispatch(appContext);
+        } else {
+            scheduleFlush(appContext, now + window);
+        }
+    }
+
+    /**
+     * Tells the consumers about the changes waiting for the end of the debounce window, if
+     * there are any.
+     */
+    public static void flush(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        synchronized (DataUpdateDispatcher.class) {
+            if (prefs.getLong(PREF_PENDING_SINCE, 0) == 0) {
+                return;
+            }
+            prefs.edit().remove(PREF_PENDING_SINCE).commit();
+        }
+        dispatch(appContext);
+    }
+
+    private static void scheduleFlush(Context context, long triggerAtMillis) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent flushIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(context, FlushReceiver.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        // Nothing is shown while the device sleeps, so the alarm doesn't need to wake it.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmManager.setExact(AlarmManager.RTC, triggerAtMillis, flushIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC, triggerAtMillis, flushIntent);
+        }
+    }
+
+    /**
+     * Dispatches the waiting data update at the end of the debounce window.
+     */
+    public static class FlushReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            flush(context);
+        }
+    }
+
+    /**
+     * @return the version of the most recent data change
+     */
+    public static long getDataVersion(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_DATA_VERSION, 0);
+    }
+
+    /**
+     * Records that a consumer is about to show the data version carried by an intent.
+     *
+     * @param consumer Name of the consumer, unique within the app
+     * @param intent   The {@link SunshineSyncAdapter#ACTION_DATA_UPDATED} intent received
+     * @return false if the consumer already showed this version and can skip the update
+     */
+    public static boolean markRendered(String consumer, Intent intent) {
+        long version = intent.getLongExtra(EXTRA_DATA_VERSION, -1);
+        if (version < 0) {
+            // Not sent by the dispatcher, so there's nothing to compare with.
+            return true;
+        }
+        synchronized (sRenderedVersions) {
+            Long rendered = sRenderedVersions.get(consumer);
+            if (rendered != null && rendered >= version) {
+                return false;
+            }
+            sRenderedVersions.put(consumer, version);
+            return true;
+        }
+    }
+
+    private static void dispatch(Context context) {
+        long version = getDataVersion(context);
+        Log.d(LOG_TAG, "Dispatching data version " + version);
+
+        // Setting the package ensures that only components in our app will receive the broadcast
+        Intent dataUpdatedIntent = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                .setPackage(context.getPackageName())
+                .putExtra(EXTRA_DATA_VERSION, version);
+        context.sendBroadcast(dataUpdatedIntent);
+
+        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
+        // Muzei background on lower API level devices
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            context.startService(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .setClass(context, WeatherMuzeiSource.class)
+                    .putExtra(EXTRA_DATA_VERSION, version));
+        }
+    }
+}
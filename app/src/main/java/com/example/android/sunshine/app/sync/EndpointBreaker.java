@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Circuit breaker for a server endpoint, so that an outage isn't made worse by every sync
+ * trying again.
+ * <p>
+ * Each consecutive failure opens the breaker for an exponentially growing, jittered delay,
+ * during which requests to the endpoint are skipped and the stored forecast is left as it is.
+ * Once the delay has passed a single request is let through, and its outcome either closes the
+ * breaker or opens it for longer.  The state is persisted, so restarting the app or the device
+ * doesn't reset the backoff, and checking an open breaker only reads a field.
+ */
+public final class EndpointBreaker {
+    private static final String LOG_TAG = EndpointBreaker.class.getSimpleName();
+
+    /** The OpenWeatherMap daily forecast. */
+    static final String ENDPOINT_FORECAST = "forecast";
+
+    private static final String PREFS_NAME = "endpoint_breakers";
+    private static final String PREF_FAILURES_SUFFIX = "_failures";
+    private static final String PREF_OPEN_UNTIL_SUFFIX = "_open_until";
+
+    static final long BASE_DELAY_MILLIS = 30 * 1000;
+    static final long MAX_DELAY_MILLIS = 6 * 60 * 60 * 1000;
+    // Other requests wait this long for the outcome of the request let through after a delay.
+    private static final long PROBE_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static final Map<String, EndpointBreaker> sBreakers =
+            new HashMap<String, EndpointBreaker>();
+    private static final Random sRandom = new Random();
+
+    private final String mEndpoint;
+    private final SharedPreferences mPrefs;
+    // Wall clock time, since it has to survive a reboot.
+    private volatile long mOpenUntil;
+    // Guarded by this.
+    private int mFailures;
+    // True while a request let through after a delay hasn't reported back.  Guarded by this.
+    private boolean mProbing;
+
+    /**
+     * Thrown instead of making a request while the endpoint is backing off.
+     */
+    public static class BackingOffException extends IOException {
+        BackingOffException(String endpoint, long retryDelayMillis) {
+            super(endpoint + " is backing off for another " + retryDelayMillis / 1000 + "s");
+        }
+    }
+
+    EndpointBreaker(Context context, String endpoint) {
+        mEndpoint = endpoint;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mFailures = mPrefs.getInt(endpoint + PREF_FAILURES_SUFFIX, 0);
+        mOpenUntil = mPrefs.getLong(endpoint + PREF_OPEN_UNTIL_SUFFIX, 0);
+    }
+
+    /**
+     * @return the breaker for the endpoint, reading its state the first time it's needed
+     */
+    static synchronized EndpointBreaker get(Context context, String endpoint) {
+        EndpointBreaker breaker = sBreakers.get(endpoint);
+        if (breaker == null) {
+            breaker = new EndpointBreaker(context.getApplicationContext(), endpoint);
+            sBreakers.put(endpoint, breaker);
+        }
+        return breaker;
+    }
+
+    /**
+     * @return true if a request to the endpoint may be made now, false while it is backing off
+     */
+    boolean allowRequest() {
+        return allowRequest(System.currentTimeMillis());
+    }
+
+    boolean allowRequest(long now) {
+        if (now < mOpenUntil) {
+            return false;
+        }
+        synchronized (this) {
+            if (now < mOpenUntil) {
+                return false;
+            }
+            if (mFailures > 0) {
+                // This request tries the endpoint again; hold the others back until it's done.
+                mOpenUntil = now + PROBE_TIMEOUT_MILLIS;
+                mProbing = true;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Gives up the request let through by {@link #allowRequest()} without an outcome, such as
+     * one aborted because its sync was cancelled, so the next request doesn't have to wait for
+     * it to time out.
+     */
+    synchronized void releaseProbe() {
+        if (mProbing) {
+            mProbing = false;
+            mOpenUntil = 0;
+        }
+    }
+
+    /**
+     * @return how long until the next request is allowed, or 0 if it is allowed now
+     */
+    long getRetryDelayMillis() {
+        return Math.max(0, mOpenUntil - System.currentTimeMillis());
+    }
+
+    /**
+     * Closes the breaker after the endpoint answered.
+     */
+    synchronized void recordSuccess() {
+        if (mFailures == 0) {
+            return;
+        }
+        Log.d(LOG_TAG, mEndpoint + " recovered after " + mFailures + " failures");
+        mFailures = 0;
+        mOpenUntil = 0;
+        mProbing = false;
+        mPrefs.edit()
+                .remove(mEndpoint + PREF_FAILURES_SUFFIX)
+                .remove(mEndpoint + PREF_OPEN_UNTIL_SUFFIX)
+                .apply();
+    }
+
+    /**
+     * Opens the breaker for longer after the endpoint failed or couldn't be reached.
+     */
+    synchronized void recordFailure() {
+        mFailures++;
+        mProbing = false;
+        long delay = computeDelay(mFailures, sRandom.nextDouble());
+        mOpenUntil = System.currentTimeMillis() + delay;
+        mPrefs.edit()
+                .putInt(mEndpoint + PREF_FAILURES_SUFFIX, mFailures)
+                .putLong(mEndpoint + PREF_OPEN_UNTIL_SUFFIX, mOpenUntil)
+                .apply();
+        Log.d(LOG_TAG, mEndpoint + " failed " + mFailures + " times, backing off for "
+                + delay / 1000 + "s");
+    }
+
+    /**
+     * Doubles the delay with each failure up to {@link #MAX_DELAY_MILLIS}, then picks a point
+     * in its upper half so that clients that failed together don't retry together.
+     *
+     * @param failures Consecutive failures, at least 1
+     * @param random A number from 0 inclusive to 1 exclusive
+     */
+    static long computeDelay(int failures, double random) {
+        // Past 2^20 times the base delay the maximum has long been reached.
+        long delay = BASE_DELAY_MILLIS << Math.min(failures - 1, 20);
+        delay = Math.min(delay, MAX_DELAY_MILLIS);
+        return delay / 2 + (long) (random * (delay / 2));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.ContentProviderOperation;
+import android.content.Context;
+import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * Applies forecast changes pushed over GCM directly to the database, instead of fetching the
+ * whole forecast again.
+ * <p>
+ * Each push carries a version number.  Pushes are applied only if they directly follow the
+ * last one applied; after a gap, or if a pushed day isn't in the database, a full sync is
+ * requested instead.  All of the changes in a push are applied in one transaction.
+ */
+public class ForecastDeltaService extends IntentService {
+    private static final String LOG_TAG = ForecastDeltaService.class.getSimpleName();
+
+    /**
+     * Value of the "type" field of a GCM message carrying forecast changes.
+     */
+    public static final String MESSAGE_TYPE_FORECAST_DELTA = "forecast_delta";
+
+    // Fields of the GCM message.
+    private static final String EXTRA_VERSION = "version";
+    private static final String EXTRA_LOCATION = "location";
+    private static final String EXTRA_DELTAS = "deltas";
+
+    private static final String PREF_PUSH_VERSION = "push_version";
+
+    // Each delta holds the date of the day and only the fields that changed, under short names.
+    private static final String DELTA_DATE = "d";
+    private static final String[][] DELTA_COLUMNS = {
+            {"hi", WeatherEntry.COLUMN_MAX_TEMP},
+            {"lo", WeatherEntry.COLUMN_MIN_TEMP},
+            {"id", WeatherEntry.COLUMN_WEATHER_ID},
+            {"desc", WeatherEntry.COLUMN_SHORT_DESC},
+            {"hum", WeatherEntry.COLUMN_HUMIDITY},
+            {"pres", WeatherEntry.COLUMN_PRESSURE},
+            {"wind", WeatherEntry.COLUMN_WIND_SPEED},
+            {"deg", WeatherEntry.COLUMN_DEGREES}
+    };
+
+    private static final String sLocationAndDateSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " = (SELECT " + WeatherContract.LocationEntry._ID
+                    + " FROM " + WeatherContract.LocationEntry.TABLE_NAME
+                    + " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?)"
+                    + " AND " + WeatherEntry.COLUMN_DATE + " = ?";
+
+    public ForecastDeltaService() {
+        super("ForecastDeltaService");
+    }
+
+    /**
+     * Hands the fields of a forecast delta GCM message over to the service.
+     */
+    public static void start(Context context, Bundle extras) {
+        context.startService(new Intent(context, ForecastDeltaService.class).putExtras(extras));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        long version;
+        try {
+            version = Long.parseLong(intent.getStringExtra(EXTRA_VERSION));
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Forecast delta without a valid version", e);
+            return;
+        }
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        long lastVersion = prefs.getLong(PREF_PUSH_VERSION, -1);
+        if (version <= lastVersion) {
+            Log.d(LOG_TAG, "Ignoring forecast delta " + version + ", already at " + lastVersion);
+            return;
+        }
+        prefs.edit().putLong(PREF_PUSH_VERSION, version).apply();
+
+        if (lastVersion == -1 || version != lastVersion + 1
+                || !apply(intent.getStringExtra(EXTRA_LOCATION),
+                intent.getStringExtra(EXTRA_DELTAS))) {
+            Log.d(LOG_TAG, "Can't apply forecast delta " + version + " after " + lastVersion
+                    + ", syncing instead");
+            SunshineSyncAdapter.syncImmediately(this);
+            return;
+        }
+        DataUpdateDispatcher.onDataChanged(this);
+    }
+
+    // Returns false if the changes couldn't be applied, in which case none of them were.
+    private boolean apply(String locationSetting, String deltasJson) {
+        if (locationSetting == null || deltasJson == null) {
+            return false;
+        }
+        try {
+            ArrayList<ContentProviderOperation> operations =
+                    buildOperations(locationSetting, new JSONArray(deltasJson));
+            getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            return true;
+        } catch (JSONException | RemoteException | OperationApplicationException
+                | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Error applying forecast delta for " + locationSetting, e);
+            return false;
+        }
+    }
+
+    /**
+     * Turns the pushed changes into one update per day.  Each update expects to change exactly
+     * one row, so that a day missing from the database fails the whole batch.
+     */
+    static ArrayList<ContentProviderOperation> buildOperations(String locationSetting,
+                                                               JSONArray deltas)
+            throws JSONException {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(deltas.length());
+        for (int i = 0; i < deltas.length(); i++) {
+            JSONObject delta = deltas.getJSONObject(i);
+            long date = WeatherContract.normalizeDate(delta.getLong(DELTA_DATE));
+            ContentProviderOperation.Builder builder =
+                    ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                            .withSelection(sLocationAndDateSelection,
+                                    new String[]{locationSetting, Long.toString(date)})
+                            .withExpectedCount(1);
+            boolean changed = false;
+            for (String[] column : DELTA_COLUMNS) {
+                if (delta.has(column[0])) {
+                    builder.withValue(column[1], delta.get(column[0]));
+                    changed = true;
+                }
+            }
+            if (changed) {
+                operations.add(builder.build());
+            }
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Downloads the daily forecast for a location from OpenWeatherMap.
+ */
+final class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Not defined by HttpURLConnection.
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private ForecastFetcher() {
+    }
+
+    /**
+     * Fetches the forecast JSON for a location.  Must not be called on the UI thread.  Callers
+     * should record a success with the {@link EndpointBreaker} once the "cod" in the response
+     * shows the server handled the request.
+     *
+     * @param locationQuery The location setting, as typed by the user
+     * @param priority The {@link QuotaGovernor} priority of the request
+     * @return the raw JSON, or null if the server returned nothing
+     * @throws IOException if the server couldn't be reached
+     * @throws EndpointBreaker.BackingOffException if the server is being given time to
+     * recover, in which case nothing was sent
+     * @throws QuotaGovernor.QuotaExceededException if the API key's quota can't afford the
+     * request, in which case nothing was sent
+     */
+    static String fetchForecastJson(Context context, String locationQuery, int priority)
+            throws IOException {
+        return fetchForecastJson(context, locationQuery, priority, null);
+    }
+
+    /**
+     * Fetches the forecast JSON for a location as part of a sync, which can abort the fetch if
+     * it is cancelled.  Must not be called on the UI thread.
+     *
+     * @param flight The sync the fetch belongs to, or null if it can't be cancelled
+     */
+    static String fetchForecastJson(Context context, String locationQuery, int priority,
+                                    SyncCoordinator.Flight flight) throws IOException {
+        EndpointBreaker breaker =
+                EndpointBreaker.get(context, EndpointBreaker.ENDPOINT_FORECAST);
+        // Don't spend a token on a request the breaker will refuse.
+        long retryDelay = breaker.getRetryDelayMillis();
+        if (retryDelay > 0) {
+            throw new EndpointBreaker.BackingOffException(EndpointBreaker.ENDPOINT_FORECAST,
+                    retryDelay);
+        }
+        if (!QuotaGovernor.get(context).tryAcquire(priority)) {
+            throw new QuotaGovernor.QuotaExceededException(priority);
+        }
+        // Only reserve the breaker's probe once the request is sure to be sent.
+        if (!breaker.allowRequest()) {
+            throw new EndpointBreaker.BackingOffException(EndpointBreaker.ENDPOINT_FORECAST,
+                    breaker.getRetryDelayMillis());
+        }
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+        // -1 until the server answers.
+        int responseCode = -1;
+
+        String format = "json";
+        String units = "metric";
+        int numDays = 14;
+
+        try {
+            // Construct the URL for the OpenWeatherMap query
+            // Possible parameters are avaiable at OWM's forecast API page, at
+            // http://openweathermap.org/API#forecast
+            final String FORECAST_BASE_URL =
+                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
+            final String QUERY_PARAM = "q";
+            final String FORMAT_PARAM = "mode";
+            final String UNITS_PARAM = "units";
+            final String DAYS_PARAM = "cnt";
+            final String APPID_PARAM = "APPID";
+
+            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM, locationQuery)
+                    .appendQueryParameter(FORMAT_PARAM, format)
+                    .appendQueryParameter(UNITS_PARAM, units)
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+
+            URL url = new URL(builtUri.toString());
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            if (flight != null) {
+                flight.setConnection(urlConnection);
+            }
+            urlConnection.setRequestMethod("GET");
+            urlConnection.connect();
+
+            responseCode = urlConnection.getResponseCode();
+            if (isServerFailure(responseCode)) {
+                throw new IOException("OpenWeatherMap returned " + responseCode);
+            }
+
+            // Read the input stream into a String
+            InputStream inputStream = urlConnection.getInputStream();
+            StringBuffer buffer = new StringBuffer();
+            if (inputStream == null) {
+                // Nothing to do.
+                return null;
+            }
+            reader = new BufferedReader(new InputStreamReader(inputStream));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                // But it does make debugging a *lot* easier if you print out the completed
+                // buffer for debugging.
+                buffer.append(line + "\n");
+            }
+
+            if (buffer.length() == 0) {
+                // Stream was empty.  No point in parsing.
+                return null;
+            }
+            return buffer.toString();
+        } catch (IOException e) {
+            if (responseCode != -1 && !isServerFailure(responseCode)) {
+                // The server is up, even if it didn't like the request.
+                breaker.recordSuccess();
+            } else if (flight == null || !flight.isCancelled()) {
+                breaker.recordFailure();
+            } else {
+                // Aborting a cancelled sync isn't the server's fault, and the next sync
+                // shouldn't wait for its outcome either.
+                breaker.releaseProbe();
+            }
+            throw e;
+        } finally {
+            if (flight != null) {
+                flight.setConnection(null);
+            }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true for HTTP status codes that mean the server is down or overloaded
+     */
+    static boolean isServerFailure(int code) {
+        return code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == HTTP_TOO_MANY_REQUESTS;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Forecasts fetched speculatively while the user types a new location, held in memory until
+ * the location is confirmed.
+ * <p>
+ * Fetches are debounced so that only the text the user pauses on is looked up.  Confirming a
+ * location whose forecast is staged, or being fetched, stores it as soon as it is ready instead
+ * of waiting for a sync to download it again.
+ */
+public final class ForecastStaging {
+    private static final String LOG_TAG = ForecastStaging.class.getSimpleName();
+
+    // A staged forecast older than this is fetched again instead.
+    private static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+    private static final int MAX_STAGED = 4;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    // Most recently staged last.  Guarded by the class.
+    private static final Map<String, Staged> sStaged =
+            new LinkedHashMap<String, Staged>(MAX_STAGED + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Staged> eldest) {
+                    return size() > MAX_STAGED;
+                }
+            };
+
+    // Locations handed to the executor whose fetch hasn't finished.  Guarded by the class.
+    private static final Set<String> sFetching = new HashSet<String>();
+
+    // Only used on the UI thread.
+    private static Runnable sPendingFetch;
+
+    private ForecastStaging() {
+    }
+
+    private static final class Staged {
+        final String mForecastJson;
+        final long mFetchedAt;
+
+        Staged(String forecastJson, long fetchedAt) {
+            mForecastJson = forecastJson;
+            mFetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * Fetches the forecast for a location the user may be about to choose, once they stop
+     * typing for a moment.  Replaces any fetch still waiting to start.  Must be called on the
+     * UI thread.
+     */
+    public static void prefetch(Context context, final String locationSetting) {
+        final Context appContext = context.getApplicationContext();
+        if (sPendingFetch != null) {
+            sHandler.removeCallbacks(sPendingFetch);
+        }
+        sPendingFetch = new Runnable() {
+            @Override
+            public void run() {
+                sPendingFetch = null;
+                synchronized (ForecastStaging.class) {
+                    sFetching.add(locationSetting);
+                }
+                sExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            fetch(appContext, locationSetting);
+                        } finally {
+                            synchronized (ForecastStaging.class) {
+                                sFetching.remove(locationSetting);
+                            }
+                        }
+                    }
+                });
+            }
+        };
+        sHandler.postDelayed(sPendingFetch, context.getResources()
+                .getInteger(R.integer.location_prefetch_debounce_millis));
+    }
+
+    /**
+     * Stores the staged forecast for a location the user just confirmed, in the background.
+     * A fetch still waiting to start is cancelled.  If the location's forecast is being
+     * fetched, its result is stored once it arrives, and a sync is only requested if the fetch
+     * fails.  Must be called on the UI thread.
+     *
+     * @return true if the location's forecast was staged or is being fetched, false if it still
+     * needs a sync
+     */
+    public static boolean promote(Context context, final String locationSetting) {
+        if (sPendingFetch != null) {
+            // The sync requested for the confirmed location makes it redundant.
+            sHandler.removeCallbacks(sPendingFetch);
+            sPendingFetch = null;
+        }
+        final String stagedJson = take(locationSetting);
+        if (stagedJson == null) {
+            synchronized (ForecastStaging.class) {
+                if (!sFetching.contains(locationSetting)) {
+                    return false;
+                }
+            }
+        }
+        final Context appContext = context.getApplicationContext();
+        // The executor has a single thread, so this runs after the fetch under way, if any.
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String forecastJson = stagedJson != null ? stagedJson : take(locationSetting);
+                if (forecastJson == null) {
+                    SunshineSyncAdapter.syncImmediately(appContext);
+                    return;
+                }
+                SunshineSyncAdapter.storePreferredForecast(appContext, locationSetting,
+                        forecastJson);
+                Log.d(LOG_TAG, "Promoted staged forecast for " + locationSetting);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Removes and returns the staged forecast JSON for a location.
+     *
+     * @return the JSON, or null if none was staged recently
+     */
+    static synchronized String take(String locationSetting) {
+        Staged staged = sStaged.remove(locationSetting);
+        if (staged == null || SystemClock.elapsedRealtime() - staged.mFetchedAt > MAX_AGE_MILLIS) {
+            return null;
+        }
+        return staged.mForecastJson;
+    }
+
+    private static void fetch(Context context, String locationSetting) {
+        synchronized (ForecastStaging.class) {
+            Staged staged = sStaged.get(locationSetting);
+            if (staged != null
+                    && SystemClock.elapsedRealtime() - staged.mFetchedAt <= MAX_AGE_MILLIS) {
+                return;
+            }
+        }
+        try {
+            String forecastJson = ForecastFetcher.fetchForecastJson(context, locationSetting,
+                    QuotaGovernor.PRIORITY_SPECULATIVE);
+            if (forecastJson == null) {
+                return;
+            }
+            int code = new JSONObject(forecastJson).optInt("cod", HttpURLConnection.HTTP_OK);
+            EndpointBreaker breaker =
+                    EndpointBreaker.get(context, EndpointBreaker.ENDPOINT_FORECAST);
+            if (ForecastFetcher.isServerFailure(code)) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();
+            }
+            // Only keep forecasts for locations the server recognized.
+            if (code != HttpURLConnection.HTTP_OK) {
+                return;
+            }
+            synchronized (ForecastStaging.class) {
+                sStaged.put(locationSetting,
+                        new Staged(forecastJson, SystemClock.elapsedRealtime()));
+            }
+            Log.d(LOG_TAG, "Staged forecast for " + locationSetting);
+        } catch (IOException | JSONException e) {
+            Log.d(LOG_TAG, "Couldn't stage forecast for " + locationSetting, e);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.WeatherCondition;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Weather art decoded at the size of a notification's large icon, kept in memory and on disk
+ * so that posting the daily notification never waits on the network.
+ * <p>
+ * The cache is filled in the background by {@link #warm(Context)}, which runs whenever the art
+ * pack changes.  {@link #getIcon(Context, WeatherCondition)} only looks at what is already
+ * there, and on a miss decodes the bundled art sampled down to the icon size and schedules a
+ * warm so the art pack image is ready for the next notification.
+ */
+public final class NotificationIconCache {
+    private static final String LOG_TAG = NotificationIconCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "notification_icons";
+    // Enough for every condition at large icon size on an xxxhdpi screen.
+    private static final int MAX_SIZE_BYTES = 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getRowBytes() * bitmap.getHeight();
+                }
+            };
+
+    // Warming downloads every condition's art, so run one warm at a time.
+    private static final Executor sWarmExecutor = Executors.newSingleThreadExecutor();
+
+    // The art pack format the disk cache was last completely filled for.
+    private static volatile String sWarmFormat;
+
+    private static final Object sStatsLock = new Object();
+    private static int sMemoryHits;
+    private static int sDiskHits;
+    private static int sMisses;
+    private static long sDiskDecodeMillis;
+    private static long sFallbackDecodeMillis;
+    private static long sWarmMillis;
+
+    private NotificationIconCache() {
+    }
+
+    /**
+     * Returns the large icon for the condition without touching the network.  Must not be
+     * called on the UI thread, since it may read the icon from disk.
+     *
+     * @return the icon, or null if the condition has no art
+     */
+    public static Bitmap getIcon(Context context, WeatherCondition condition) {
+        if (condition.getArtName() == null) {
+            return null;
+        }
+        int[] size = getIconSize(context);
+        String key = getKey(context, condition, size);
+
+        Bitmap icon = sCache.get(key);
+        if (icon != null) {
+            synchronized (sStatsLock) {
+                sMemoryHits++;
+            }
+            return icon;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        File file = getFile(context, key);
+        if (file.exists()) {
+            icon = BitmapFactory.decodeFile(file.getPath());
+        }
+        if (icon != null) {
+            sCache.put(key, icon);
+            synchronized (sStatsLock) {
+                sDiskHits++;
+                sDiskDecodeMillis += SystemClock.elapsedRealtime() - start;
+            }
+            return icon;
+        }
+
+        // Not warmed yet for this art pack: use the bundled art now and fetch the rest later.
+        icon = decodeSampledResource(context.getResources(), condition.getArtResId(),
+                size[0], size[1]);
+        synchronized (sStatsLock) {
+            sMisses++;
+            sFallbackDecodeMillis += SystemClock.elapsedRealtime() - start;
+        }
+        warm(context);
+        return icon;
+    }
+
+    /**
+     * Loads the art for every condition in the selected art pack at large icon size, in the
+     * background.  Does nothing if that art pack has already been loaded.
+     */
+    public static void warm(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sWarmExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String format = SettingsSnapshot.get(appContext).getArtPackFormat();
+                if (format.equals(sWarmFormat)) {
+                    return;
+                }
+                long start = SystemClock.elapsedRealtime();
+                if (warmBlocking(appContext)) {
+                    sWarmFormat = format;
+                }
+                synchronized (sStatsLock) {
+                    sWarmMillis += SystemClock.elapsedRealtime() - start;
+                }
+                logStats();
+            }
+        });
+    }
+
+    /**
+     * Logs the hit, miss and decode time counters, if debug logging is enabled for this class
+     * with {@code adb shell setprop log.tag.NotificationIconCache DEBUG}.
+     */
+    public static void logStats() {
+        if (!Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            return;
+        }
+        synchronized (sStatsLock) {
+            Log.d(LOG_TAG, "Large icons: " + sMemoryHits + " memory hits, " + sDiskHits
+                    + " disk hits (" + sDiskDecodeMillis + "ms decoding), " + sMisses
+                    + " misses (" + sFallbackDecodeMillis + "ms decoding bundled art), "
+                    + sWarmMillis + "ms warming");
+        }
+    }
+
+    // Returns true if every condition's art was stored.
+    private static boolean warmBlocking(Context context) {
+        boolean complete = true;
+        boolean localGraphics = SettingsSnapshot.get(context).usingLocalGraphics();
+        int[] size = getIconSize(context);
+        Set<String> artNames = new HashSet<String>();
+        for (int weatherId = 200; weatherId <= 962; weatherId++) {
+            WeatherCondition condition = WeatherCondition.forId(weatherId);
+            if (condition.getArtName() == null || !artNames.add(condition.getArtName())) {
+                continue;
+            }
+            String key = getKey(context, condition, size);
+            File file = getFile(context, key);
+            if (file.exists()) {
+                continue;
+            }
+
+            Bitmap icon;
+            if (localGraphics) {
+                icon = decodeSampledResource(context.getResources(), condition.getArtResId(),
+                        size[0], size[1]);
+            } else {
+                String artUrl = condition.getArtUrl(context);
+                FutureTarget<Bitmap> target = Glide.with(context)
+                        .load(artUrl)
+                        .asBitmap()
+                        .fitCenter()
+                        .into(size[0], size[1]);
+                try {
+                    Bitmap loaded = target.get();
+                    // Clearing the target hands Glide's bitmap back to its pool, so keep a copy.
+                    icon = loaded.copy(loaded.getConfig() != null
+                            ? loaded.getConfig() : Bitmap.Config.ARGB_8888, false);
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                    icon = null;
+                } finally {
+                    Glide.clear(target);
+                }
+            }
+            if (icon == null || !store(file, icon)) {
+                complete = false;
+                continue;
+            }
+            sCache.put(key, icon);
+        }
+        return complete;
+    }
+
+    private static boolean store(File file, Bitmap icon) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return false;
+        }
+        // Write to a temporary file first so a reader never sees half an image.
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            if (!icon.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                return false;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing large icon " + file.getName(), e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + temp, e);
+                }
+            }
+        }
+        return temp.renameTo(file);
+    }
+
+    /**
+     * Decodes a resource using the largest power of two sample size that still covers the
+     * requested size, then scales it to fit.
+     */
+    private static Bitmap decodeSampledResource(Resources resources, int resId,
+                                                int width, int height) {
+        if (resId == -1) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        if (bitmap == null || (bitmap.getWidth() <= width && bitmap.getHeight() <= height)) {
+            return bitmap;
+        }
+        float scale = Math.min((float) width / bitmap.getWidth(),
+                (float) height / bitmap.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private static String getKey(Context context, WeatherCondition condition, int[] size) {
+        String format = SettingsSnapshot.get(context).getArtPackFormat();
+        return condition.getArtName() + "_" + Integer.toHexString(format.hashCode())
+                + "_" + size[0] + "x" + size[1];
+    }
+
+    private static File getFile(Context context, String key) {
+        return new File(new File(context.getCacheDir(), DIRECTORY), key + ".png");
+    }
+
+    // On Honeycomb and higher devices, we can retrieve the size of the large icon
+    // Prior to that, we use a fixed size
+    @SuppressLint("InlinedApi")
+    private static int[] getIconSize(Context context) {
+        Resources resources = context.getResources();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return new int[]{
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)};
+        }
+        int size = resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return new int[]{size, size};
+    }
+}
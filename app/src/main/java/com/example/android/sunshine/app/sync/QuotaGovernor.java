@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Token bucket that every request made with the OpenWeatherMap API key has to take a token
+ * from, so that bursts of syncs never get the key rate limited.
+ * <p>
+ * The bucket refills at a steady rate up to its capacity, and its level is persisted so that
+ * restarting the process doesn't hand out a fresh burst.  Requests the user is waiting for can
+ * empty the bucket, while background and speculative requests leave part of it in reserve.
+ */
+public final class QuotaGovernor {
+    private static final String LOG_TAG = QuotaGovernor.class.getSimpleName();
+
+    /** A request the user is waiting for, such as a refresh after changing location. */
+    public static final int PRIORITY_USER = 0;
+    /** A periodic sync, or a location only a widget shows. */
+    public static final int PRIORITY_BACKGROUND = 1;
+    /** A request that may never be used, such as a prefetch while typing. */
+    public static final int PRIORITY_SPECULATIVE = 2;
+    private static final int PRIORITY_COUNT = 3;
+
+    // Fractions of the capacity each priority has to leave in the bucket.
+    private static final float[] RESERVES = {0f, 0.25f, 0.5f};
+
+    // Half of the free plan's 60 calls a minute, leaving room for what the key is used for
+    // elsewhere.
+    static final int CAPACITY = 30;
+    static final long REFILL_MILLIS = 2 * 1000;
+
+    private static final String PREFS_NAME = "owm_quota";
+    private static final String PREF_TOKENS = "tokens";
+    private static final String PREF_UPDATED_AT = "updated_at";
+
+    private static QuotaGovernor sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final int mCapacity;
+    private final long mRefillMillis;
+
+    // All guarded by this.
+    private double mTokens;
+    private long mUpdatedAt;
+    private final int[] mGranted = new int[PRIORITY_COUNT];
+    private final int[] mDenied = new int[PRIORITY_COUNT];
+
+    /**
+     * Thrown instead of making a request the quota can't afford.
+     */
+    public static class QuotaExceededException extends IOException {
+        QuotaExceededException(int priority) {
+            super("No OpenWeatherMap quota left for priority " + priority);
+        }
+    }
+
+    QuotaGovernor(SharedPreferences prefs, int capacity, long refillMillis) {
+        mPrefs = prefs;
+        mCapacity = capacity;
+        mRefillMillis = refillMillis;
+        mTokens = prefs.getFloat(PREF_TOKENS, capacity);
+        mUpdatedAt = prefs.getLong(PREF_UPDATED_AT, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the governor for the app's API key
+     */
+    public static synchronized QuotaGovernor get(Context context) {
+        if (sInstance == null) {
+            sInstance = new QuotaGovernor(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                    CAPACITY, REFILL_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a token for a request if the priority may have one.
+     *
+     * @return true if the request may be made
+     */
+    public boolean tryAcquire(int priority) {
+        return tryAcquire(priority, System.currentTimeMillis());
+    }
+
+    synchronized boolean tryAcquire(int priority, long now) {
+        refill(now);
+        if (mTokens - 1 < mCapacity * RESERVES[priority]) {
+            mDenied[priority]++;
+            Log.d(LOG_TAG, "Denied a request of priority " + priority + " with "
+                    + (int) mTokens + " tokens left");
+            return false;
+        }
+        mTokens -= 1;
+        mGranted[priority]++;
+        mPrefs.edit()
+                .putFloat(PREF_TOKENS, (float) mTokens)
+                .putLong(PREF_UPDATED_AT, mUpdatedAt)
+                .apply();
+        return true;
+    }
+
+    /**
+     * @return how many requests could be made right now, ignoring reserves
+     */
+    public synchronized int getRemainingTokens() {
+        refill(System.currentTimeMillis());
+        return (int) mTokens;
+    }
+
+    /**
+     * @return how many requests of the priority were allowed since the process started
+     */
+    public synchronized int getGrantedCount(int priority) {
+        return mGranted[priority];
+    }
+
+    /**
+     * @return how many requests of the priority were refused since the process started
+     */
+    public synchronized int getDeniedCount(int priority) {
+        return mDenied[priority];
+    }
+
+    /**
+     * Logs the remaining budget and the request counters.
+     */
+    public synchronized void logStats() {
+        refill(System.currentTimeMillis());
+        StringBuilder stats = new StringBuilder("OpenWeatherMap quota: ")
+                .append((int) mTokens).append('/').append(mCapacity).append(" tokens left");
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            stats.append(", priority ").append(priority).append(": ")
+                    .append(mGranted[priority]).append(" granted, ")
+                    .append(mDenied[priority]).append(" denied");
+        }
+        Log.d(LOG_TAG, stats.toString());
+    }
+
+    private void refill(long now) {
+        // A clock that went backwards refills nothing rather than draining the bucket.
+        long elapsed = Math.max(0, now - mUpdatedAt);
+        mTokens = Math.min(mCapacity, mTokens + (double) elapsed / mRefillMillis);
+        mUpdatedAt = now;
+    }
+}
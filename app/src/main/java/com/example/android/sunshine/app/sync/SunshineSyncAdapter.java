@@ -2,27 +2,29 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -31,13 +33,13 @@ import android.text.format.Time;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherCondition;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.widget.WidgetArtCache;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -50,22 +52,18 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
 
-    public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
+    private static final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     private GoogleApiClient mGoogleApiClient;
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
@@ -112,93 +110,131 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                               ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
 
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        SyncCoordinator.Flight flight = SyncCoordinator.begin(getContext());
+        // Only the location in the app is refreshed because the user asked for it.
+        int preferredPriority = extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)
+                ? QuotaGovernor.PRIORITY_USER : QuotaGovernor.PRIORITY_BACKGROUND;
+        boolean stored = false;
+        try {
+            stored = syncLocation(flight.getLocation(), true, preferredPriority, flight,
+                    provider);
+
+            // Widgets can show other locations than the app, so keep those up to date as well
+            for (String widgetLocation : flight.getExtraLocations()) {
+                if (flight.isCancelled()) {
+                    // A sync for the new location is waiting to start, and will cover these.
+                    break;
+                }
+                stored |= syncLocation(widgetLocation, false, QuotaGovernor.PRIORITY_BACKGROUND,
+                        flight, provider);
+            }
+        } finally {
+            SyncCoordinator.end(flight);
+        }
+        if (stored) {
+            // Covers every widget location, so once per sync is enough.
+            WidgetArtCache.prefetch(getContext());
+        }
+        QuotaGovernor.get(getContext()).logStats();
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        SyncScheduler.scheduleNext(getContext());
+    }
 
+    /**
+     * Fetches and stores the forecast for one location.
+     *
+     * @param isPreferred true for the location set in the app, which is the only one that the
+     *                    location status, notifications and the wearable follow
+     * @param priority The {@link QuotaGovernor} priority of the fetch
+     * @param flight The sync this is part of, which may be cancelled while fetching
+     * @param provider The client the sync writes through
+     * @return true if a forecast was stored
+     */
+    private boolean syncLocation(String locationQuery, boolean isPreferred, int priority,
+                              SyncCoordinator.Flight flight, ContentProviderClient provider) {
+        Context context = getContext();
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
+            // A forecast fetched while the location was being typed saves the round trip.
+            String forecastJsonStr = isPreferred ? ForecastStaging.take(locationQuery) : null;
+            boolean fetched = false;
+            if (forecastJsonStr == null) {
+                forecastJsonStr = ForecastFetcher.fetchForecastJson(context, locationQuery,
+                        priority, flight);
+                fetched = true;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            if (isStale(flight, isPreferred)) {
+                Log.d(LOG_TAG, "Discarding forecast for " + locationQuery
+                        + ", the location changed");
+                if (fetched) {
+                    // Its "cod" is never read, so don't leave the breaker waiting for it.
+                    EndpointBreaker.get(context, EndpointBreaker.ENDPOINT_FORECAST)
+                            .releaseProbe();
+                }
+                return false;
             }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            if (forecastJsonStr == null) {
+                updateLocationStatus(context, isPreferred, LOCATION_STATUS_SERVER_DOWN);
+                return false;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            boolean stored = getWeatherDataFromJson(context, forecastJsonStr, locationQuery,
+                    isPreferred, provider);
+            if (stored && isPreferred) {
+                Log.i(LOG_TAG, "calling notifyWear");
+                notifyWear();
+            }
+            return stored;
+        } catch (EndpointBreaker.BackingOffException e) {
+            // Keep showing the stored forecast until the server has had time to recover.
+            Log.d(LOG_TAG, "Skipping " + locationQuery + ": " + e.getMessage());
+        } catch (QuotaGovernor.QuotaExceededException e) {
+            // Nothing was sent, so keep the stored forecast and status until the next sync.
+            Log.d(LOG_TAG, "Skipping " + locationQuery + ": " + e.getMessage());
         } catch (IOException e) {
+            if (isStale(flight, isPreferred)) {
+                // The fetch was aborted because the location changed.
+                return false;
+            }
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            updateLocationStatus(context, isPreferred, LOCATION_STATUS_SERVER_DOWN);
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            updateLocationStatus(context, isPreferred, LOCATION_STATUS_SERVER_INVALID);
+        }
+        return false;
+    }
+
+    /*
+        A fetch for the preferred location is stale once the user picked another one, either
+        through a new sync request or a forecast staged while typing.
+     */
+    private boolean isStale(SyncCoordinator.Flight flight, boolean isPreferred) {
+        return flight.isCancelled() || (isPreferred
+                && !flight.getLocation().equals(Utility.getPreferredLocation(getContext())));
+    }
+
+    /**
+     * Stores a forecast that was fetched ahead of time for the location set in the app, as if
+     * it had just been synced.  The wearable is left for the next sync to update, since its
+     * client belongs to the sync adapter.  Must not be called on the UI thread.
+     */
+    static void storePreferredForecast(Context context, String locationSetting,
+                                       String forecastJsonStr) {
+        ContentProviderClient provider = context.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            if (getWeatherDataFromJson(context, forecastJsonStr, locationSetting, true,
+                    provider)) {
+                WidgetArtCache.prefetch(context);
             }
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            setLocationStatus(context, LOCATION_STATUS_SERVER_INVALID);
+        } finally {
+            provider.release();
         }
-        return;
     }
 
     /**
@@ -207,9 +243,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      *
      * Fortunately parsing is easy:  constructor takes the JSON string and converts it
      * into an Object hierarchy for us.
+     *
+     * Static, so that a forecast staged outside of a sync can be stored without an adapter.
+     *
+     * @return true if the forecast was stored
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
+    private static boolean getWeatherDataFromJson(Context context,
+                                                  String forecastJsonStr,
+                                                  String locationSetting,
+                                                  boolean isPreferred,
+                                                  ContentProviderClient provider)
             throws JSONException {
         Log.i(LOG_TAG, "getWeatherDataFromJson Enter");
         // Now we have a String representing the complete forecast in JSON Format.
@@ -253,15 +296,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
                 int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
 
+                EndpointBreaker breaker =
+                        EndpointBreaker.get(context, EndpointBreaker.ENDPOINT_FORECAST);
                 switch (errorCode) {
                     case HttpURLConnection.HTTP_OK:
+                        breaker.recordSuccess();
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
+                        breaker.recordSuccess();
+                        updateLocationStatus(context, isPreferred, LOCATION_STATUS_INVALID);
+                        return false;
                     default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+                        if (ForecastFetcher.isServerFailure(errorCode)) {
+                            breaker.recordFailure();
+                        }
+                        updateLocationStatus(context, isPreferred, LOCATION_STATUS_SERVER_DOWN);
+                        return false;
                 }
             }
 
@@ -274,7 +324,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
             double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+            // The whole forecast is written as one batch, so readers never see half of it.
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>(weatherArray.length() + 2);
+            long locationId = queryLocationId(provider, locationSetting);
+            if (locationId == -1) {
+                operations.add(buildLocationInsert(locationSetting, cityName, cityLatitude,
+                        cityLongitude));
+            }
 
             // Insert the new weather information into the database
             Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
@@ -336,7 +393,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
                 ContentValues weatherValues = new ContentValues();
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
@@ -348,10 +404,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
 
                 cVVector.add(weatherValues);
-                // #wear
-                minTemp = low;
-                maxTemp = high;
-                Log.i(LOG_TAG, "Rxd min and max : "+ minTemp + " , " + maxTemp);
+                ContentProviderOperation.Builder insert = ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues);
+                if (locationId == -1) {
+                    // Use the id of the location inserted by the first operation.
+                    insert.withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, 0);
+                } else {
+                    insert.withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                }
+                operations.add(insert.build());
             }
 
             int inserted = 0;
@@ -359,57 +421,49 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+                if (isPreferred) {
+                    // Compare with the stored forecast before it is replaced.
+                    SyncScheduler.recordForecastChange(context, locationSetting, cvArray);
+                }
 
                 // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                operations.add(ContentProviderOperation
+                        .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                                new String[]{Long.toString(dayTime.setJulianDay(julianStartDay-1))})
+                        .build());
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                Log.i(LOG_TAG, "calling notifyWear");
-                notifyWear();
+                // One transaction, and one notification per changed URI once it has committed.
+                try {
+                    provider.applyBatch(operations);
+                } catch (RemoteException | OperationApplicationException | SQLException e) {
+                    Log.e(LOG_TAG, "Error storing the forecast for " + locationSetting, e);
+                    return false;
+                }
+
+                DataUpdateDispatcher.onDataChanged(context);
+                if (isPreferred) {
+                    WeatherAlertEngine.evaluateAndNotify(context, locationSetting, cityName,
+                            cvArray);
+                    notifyWeather(context);
+                }
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
-
+            updateLocationStatus(context, isPreferred, LOCATION_STATUS_OK);
+            return cVVector.size() > 0;
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        }
-    }
-
-    private void updateWidgets() {
-        Context context = getContext();
-        // Setting the package ensures that only components in our app will receive the broadcast
-        Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
-                .setPackage(context.getPackageName());
-        context.sendBroadcast(dataUpdatedIntent);
-    }
-
-    private void updateMuzei() {
-        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
-        // Muzei background on lower API level devices
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
-            context.startService(new Intent(ACTION_DATA_UPDATED)
-                    .setClass(context, WeatherMuzeiSource.class));
+            updateLocationStatus(context, isPreferred, LOCATION_STATUS_SERVER_INVALID);
+            return false;
         }
     }
 
-    private void notifyWeather() {
-        Context context = getContext();
+    private static void notifyWeather(Context context) {
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-        if ( displayNotifications ) {
+        if ( SettingsSnapshot.get(context).notificationsEnabled() ) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
 
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
@@ -429,35 +483,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     double low = cursor.getDouble(INDEX_MIN_TEMP);
                     String desc = cursor.getString(INDEX_SHORT_DESC);
 
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+                    WeatherCondition condition = WeatherCondition.forId(weatherId);
+                    int iconId = condition.getIconResId();
                     Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
+                    // Served from the icon cache, so a slow art pack never holds up the sync.
+                    Bitmap largeIcon = NotificationIconCache.getIcon(context, condition);
+                    NotificationIconCache.logStats();
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -469,7 +500,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
                     NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
+                            new NotificationCompat.Builder(context)
                                     .setColor(resources.getColor(R.color.primary_light))
                                     .setSmallIcon(iconId)
                                     .setLargeIcon(largeIcon)
@@ -494,7 +525,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     mBuilder.setContentIntent(resultPendingIntent);
 
                     NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+                            (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
                     // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
                     mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
 
@@ -509,53 +540,51 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Looks up a location stored by an earlier sync.
      *
      * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID of the location, or -1 if it isn't stored yet.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
+    private static long queryLocationId(ContentProviderClient provider, String locationSetting) {
+        Cursor locationCursor;
+        try {
+            locationCursor = provider.query(
                     WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+                    new String[]{WeatherContract.LocationEntry._ID},
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{locationSetting},
+                    null);
+        } catch (RemoteException e) {
+            Log.e(LOG_TAG, "Error looking up " + locationSetting, e);
+            return -1;
+        }
+        if (locationCursor == null) {
+            return -1;
+        }
+        try {
+            return locationCursor.moveToFirst() ? locationCursor.getLong(0) : -1;
+        } finally {
+            locationCursor.close();
         }
+    }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    /**
+     * Builds the insertion of a new location in the weather database.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param cityName A human-readable city name, e.g "Mountain View"
+     * @param lat the latitude of the city
+     * @param lon the longitude of the city
+     */
+    private static ContentProviderOperation buildLocationInsert(String locationSetting,
+                                                                String cityName,
+                                                                double lat, double lon) {
+        return ContentProviderOperation.newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName)
+                .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon)
+                .build();
     }
 
     /**
@@ -578,10 +607,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     /**
-     * Helper method to have the sync adapter sync immediately
+     * Helper method to have the sync adapter sync immediately, unless the request can join a
+     * sync that is already waiting or running
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        if (!SyncCoordinator.onSyncRequested(context)) {
+            Log.d(LOG_TAG, "Merged sync request into a waiting or running sync");
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
@@ -649,6 +683,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         getSyncAccount(context);
     }
 
+    /**
+     * Sets the location status, if the location being synced is the one it describes.
+     */
+    private static void updateLocationStatus(Context c, boolean isPreferred,
+                                             @LocationStatus int locationStatus) {
+        if (isPreferred) {
+            setLocationStatus(c, locationStatus);
+        }
+    }
+
     /**
      * Sets the location status into shared preference.  This function should not be called from
      * the UI thread because it uses commit to write to the shared preferences.
@@ -663,8 +707,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     //Putting all wearable specific code here..
-    double minTemp;
-    double maxTemp;
     @Override
     public void onConnected(Bundle connectionHint) {
         Log.d(LOG_TAG, "Connected to Google Api Service");
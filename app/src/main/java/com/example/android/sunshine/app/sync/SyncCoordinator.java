@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.widget.WidgetLocationStore;
+
+import java.net.HttpURLConnection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Coalesces requests for an immediate sync, so that at most one sync is running and one is
+ * waiting at any time.
+ * <p>
+ * A sync reads the locations it covers when it starts, so a request made while another is
+ * still waiting is merged into it.  A request made while a sync for the same locations is
+ * running is merged into the running one.  If the preferred location changed since the running
+ * sync started, its fetch is cancelled and a new sync is requested, because its results would
+ * only be thrown away.  The sync adapter runs in the app's process, so this state is shared
+ * with the UI.
+ */
+public final class SyncCoordinator {
+    private static final String LOG_TAG = SyncCoordinator.class.getSimpleName();
+
+    // A requested sync that hasn't started by then is assumed to have been dropped.
+    private static final long PENDING_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    // All guarded by the class.
+    private static Flight sInFlight;
+    private static long sPendingSince = -1;
+    private static int sRequested;
+    private static int sMerged;
+    private static int sCancelled;
+
+    private SyncCoordinator() {
+    }
+
+    /**
+     * One running sync: the locations it covers and the connection it is fetching with.
+     */
+    public static final class Flight {
+        private final String mLocation;
+        private final Set<String> mExtraLocations;
+        private HttpURLConnection mConnection;
+        private boolean mCancelled;
+
+        private Flight(String location, Set<String> extraLocations) {
+            mLocation = location;
+            mExtraLocations = extraLocations;
+        }
+
+        /**
+         * @return the preferred location when the sync started
+         */
+        public String getLocation() {
+            return mLocation;
+        }
+
+        /**
+         * @return the other locations widgets showed when the sync started
+         */
+        public Set<String> getExtraLocations() {
+            return mExtraLocations;
+        }
+
+        /**
+         * @return true if the sync has been superseded and its results should be discarded
+         */
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Tracks the connection being read, so cancelling the flight can abort it.  A
+         * connection set after the flight was cancelled is aborted straight away.
+         *
+         * @param connection The connection, or null once it has been closed
+         */
+        synchronized void setConnection(HttpURLConnection connection) {
+            mConnection = connection;
+            if (mCancelled && connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        private synchronized void cancel() {
+            mCancelled = true;
+            if (mConnection != null) {
+                // Makes the blocked read on the sync thread fail with an IOException.
+                mConnection.disconnect();
+            }
+        }
+
+        private boolean coversWidgets(Context context) {
+            return mExtraLocations.containsAll(WidgetLocationStore.getExtraLocations(context));
+        }
+    }
+
+    /**
+     * Decides whether an immediate sync still needs to be requested, cancelling a running sync
+     * that is out of date.
+     *
+     * @return false if the request was merged into a sync that is waiting or running
+     */
+    static boolean onSyncRequested(Context context) {
+        String location = Utility.getPreferredLocation(context);
+        synchronized (SyncCoordinator.class) {
+            if (sPendingSince >= 0
+                    && SystemClock.elapsedRealtime() - sPendingSince < PENDING_TIMEOUT_MILLIS) {
+                // It will read the latest locations when it starts.
+                sMerged++;
+                return false;
+            }
+            Flight flight = sInFlight;
+            if (flight != null && !flight.isCancelled()) {
+                if (!flight.getLocation().equals(location)) {
+                    Log.d(LOG_TAG, "Cancelling sync of " + flight.getLocation()
+                            + " for " + location);
+                    flight.cancel();
+                    sCancelled++;
+                } else if (flight.coversWidgets(context)) {
+                    sMerged++;
+                    return false;
+                }
+            }
+            sPendingSince = SystemClock.elapsedRealtime();
+            sRequested++;
+            return true;
+        }
+    }
+
+    /**
+     * Marks the start of a sync, reading the locations it covers.
+     */
+    static Flight begin(Context context) {
+        Flight flight = new Flight(Utility.getPreferredLocation(context),
+                new LinkedHashSet<String>(WidgetLocationStore.getExtraLocations(context)));
+        synchronized (SyncCoordinator.class) {
+            sInFlight = flight;
+            sPendingSince = -1;
+        }
+        return flight;
+    }
+
+    /**
+     * Marks the end of a sync started with {@link #begin(Context)}.
+     */
+    static void end(Flight flight) {
+        synchronized (SyncCoordinator.class) {
+            if (sInFlight == flight) {
+                sInFlight = null;
+            }
+        }
+        logStats();
+    }
+
+    /**
+     * @return how many requests were merged into a waiting or running sync
+     */
+    public static synchronized int getMergedCount() {
+        return sMerged;
+    }
+
+    /**
+     * @return how many running syncs were cancelled because the location changed
+     */
+    public static synchronized int getCancelledCount() {
+        return sCancelled;
+    }
+
+    /**
+     * Logs the request counters.
+     */
+    public static synchronized void logStats() {
+        Log.d(LOG_TAG, "Immediate syncs: " + sRequested + " requested, " + sMerged
+                + " merged, " + sCancelled + " cancelled");
+    }
+}
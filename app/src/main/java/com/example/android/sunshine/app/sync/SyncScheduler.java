@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the interval of the periodic sync after each sync, instead of always syncing every
+ * {@link SunshineSyncAdapter#SYNC_INTERVAL} seconds.
+ * <p>
+ * Each sync of the preferred location is compared with the forecast it replaces, and a moving
+ * average of how much it changed sets the base interval: forecasts that barely move are synced
+ * less often, and ones that keep changing sooner.  The interval is then stretched overnight
+ * and on metered networks, and shortened while charging.  Every decision is appended to a
+ * small CSV file in the app's files directory so the schedule can be analyzed later.
+ */
+public final class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    private static final String PREFS_NAME = "sync_scheduler";
+    private static final String PREF_VOLATILITY = "volatility";
+    private static final String PREF_INTERVAL = "interval";
+
+    static final String DECISION_LOG = "sync_decisions.csv";
+    // The log is started over once it reaches this size, keeping the previous one.
+    private static final long MAX_LOG_BYTES = 32 * 1024;
+
+    // Degrees Celsius of change a sync is expected to bring at the default interval.
+    static final float TYPICAL_VOLATILITY = 2f;
+    // A different kind of weather, such as rain instead of clouds, counts as this many degrees.
+    private static final float CONDITION_CHANGE_DEGREES = 3f;
+    // Weight of the latest sync in the moving average.
+    private static final float SMOOTHING = 0.3f;
+
+    static final int MIN_INTERVAL = 60 * 90;
+    static final int MAX_INTERVAL = 60 * 60 * 12;
+    // Only reschedule when the interval moves by more than this fraction.
+    private static final float RESCHEDULE_THRESHOLD = 0.1f;
+
+    private static final String[] PREVIOUS_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    // These indices are tied to PREVIOUS_COLUMNS.
+    private static final int COL_DATE = 0;
+    private static final int COL_MAX_TEMP = 1;
+    private static final int COL_MIN_TEMP = 2;
+    private static final int COL_WEATHER_ID = 3;
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Compares a freshly downloaded forecast with the one stored for the location, and folds
+     * the difference into the volatility average.  Must be called before the new forecast is
+     * stored.  Does nothing if there is no stored forecast to compare with.
+     */
+    static void recordForecastChange(Context context, String locationSetting,
+                                     ContentValues[] days) {
+        if (days.length == 0) {
+            return;
+        }
+        Map<Long, ContentValues> previous = new HashMap<Long, ContentValues>();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        days[0].getAsLong(WeatherEntry.COLUMN_DATE)),
+                PREVIOUS_COLUMNS, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                ContentValues day = new ContentValues();
+                day.put(WeatherEntry.COLUMN_MAX_TEMP, cursor.getDouble(COL_MAX_TEMP));
+                day.put(WeatherEntry.COLUMN_MIN_TEMP, cursor.getDouble(COL_MIN_TEMP));
+                day.put(WeatherEntry.COLUMN_WEATHER_ID, cursor.getInt(COL_WEATHER_ID));
+                previous.put(cursor.getLong(COL_DATE), day);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        float change = measureChange(previous, days);
+        if (change < 0) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        float volatility = prefs.getFloat(PREF_VOLATILITY, TYPICAL_VOLATILITY);
+        volatility += SMOOTHING * (change - volatility);
+        prefs.edit().putFloat(PREF_VOLATILITY, volatility).apply();
+        Log.d(LOG_TAG, "Forecast changed by " + change + ", volatility now " + volatility);
+    }
+
+    /**
+     * @return the average change of the days in both forecasts, in degrees Celsius, or -1 if
+     * they have no days in common
+     */
+    static float measureChange(Map<Long, ContentValues> previous, ContentValues[] days) {
+        float total = 0;
+        int compared = 0;
+        for (ContentValues day : days) {
+            ContentValues before = previous.get(day.getAsLong(WeatherEntry.COLUMN_DATE));
+            if (before == null) {
+                continue;
+            }
+            total += Math.abs(day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP)
+                    - before.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP)) / 2;
+            total += Math.abs(day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP)
+                    - before.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP)) / 2;
+            // Condition ids are grouped by hundreds: storms, drizzle, rain, snow and so on.
+            if (day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID) / 100
+                    != before.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID) / 100) {
+                total += CONDITION_CHANGE_DEGREES;
+            }
+            compared++;
+        }
+        return compared == 0 ? -1 : total / compared;
+    }
+
+    /**
+     * Works out the next sync interval from the current volatility and device state, and
+     * reschedules the periodic sync if it moved enough to matter.  Called at the end of every
+     * sync.
+     */
+    static void scheduleNext(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        float volatility = prefs.getFloat(PREF_VOLATILITY, TYPICAL_VOLATILITY);
+        int hourOfDay = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        boolean charging = isCharging(context);
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        boolean metered = ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+
+        int interval = computeInterval(volatility, hourOfDay, charging, metered);
+        int current = prefs.getInt(PREF_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+        boolean reschedule =
+                Math.abs(interval - current) > current * RESCHEDULE_THRESHOLD;
+        if (reschedule) {
+            SunshineSyncAdapter.configurePeriodicSync(context, interval, interval / 3);
+            prefs.edit().putInt(PREF_INTERVAL, interval).apply();
+        } else {
+            interval = current;
+        }
+        Log.d(LOG_TAG, "Next sync in " + interval / 60 + " minutes"
+                + (reschedule ? " (rescheduled)" : ""));
+        logDecision(context, String.format(Locale.US, "%d,%.2f,%d,%b,%b,%d,%b",
+                System.currentTimeMillis(), volatility, hourOfDay, charging, metered, interval,
+                reschedule));
+    }
+
+    /**
+     * @param volatility The average forecast change per sync, in degrees Celsius
+     * @param hourOfDay Local hour, from 0 to 23
+     * @return the sync interval in seconds
+     */
+    static int computeInterval(float volatility, int hourOfDay, boolean charging,
+                               boolean metered) {
+        // Twice as volatile syncs about 1.4 times as often, within a factor of two either way.
+        double factor = Math.sqrt(TYPICAL_VOLATILITY / Math.max(volatility, 0.01f));
+        factor = Math.max(0.5, Math.min(2, factor));
+        if (hourOfDay >= 23 || hourOfDay < 6) {
+            // Nobody is checking the forecast overnight.
+            factor *= 2;
+        }
+        if (charging) {
+            // Wakeups are cheap while plugged in.
+            factor *= 0.75;
+        }
+        if (metered) {
+            factor *= 1.25;
+        }
+        int interval = (int) (SunshineSyncAdapter.SYNC_INTERVAL * factor);
+        return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, interval));
+    }
+
+    private static boolean isCharging(Context context) {
+        // The battery broadcast is sticky, so this returns the last one without registering.
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private static void logDecision(Context context, String line) {
+        File log = new File(context.getFilesDir(), DECISION_LOG);
+        boolean header = !log.exists();
+        if (log.length() > MAX_LOG_BYTES) {
+            File old = new File(context.getFilesDir(), DECISION_LOG + ".old");
+            if (!log.renameTo(old)) {
+                Log.w(LOG_TAG, "Couldn't rotate " + log);
+            }
+            header = true;
+        }
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(log, true);
+            if (header) {
+                writer.write("time,volatility,hour,charging,metered,interval,rescheduled\n");
+            }
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + log, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + log, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherCondition;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Raises severe weather alerts on the device, by checking each newly synced forecast against
+ * the thresholds chosen in the settings.
+ * <p>
+ * Each rule remembers the location and day it last alerted for, so a forecast that keeps
+ * showing the same storm only notifies once however often it is synced.
+ */
+public final class WeatherAlertEngine {
+    private static final String LOG_TAG = WeatherAlertEngine.class.getSimpleName();
+
+    public static final int RULE_TEMPERATURE_SWING = 0;
+    public static final int RULE_WIND = 1;
+    public static final int RULE_STORM = 2;
+    static final int RULE_COUNT = 3;
+
+    // Only the next few days are worth interrupting the user for.
+    static final int LOOKAHEAD_DAYS = 3;
+
+    // The forecast is fetched in metric units, where OpenWeatherMap gives wind speeds in m/s.
+    private static final double KMH_PER_METER_PER_SECOND = 3.6;
+
+    private static final String PREFS_NAME = "weather_alerts";
+    private static final int ALERT_NOTIFICATION_ID = 3100;
+
+    private WeatherAlertEngine() {
+    }
+
+    /**
+     * The limits the forecast is checked against.  Zero turns a threshold off.
+     */
+    public static final class Thresholds {
+        final double mTemperatureSwing;
+        final double mWindSpeed;
+        final boolean mStorms;
+
+        /**
+         * @param temperatureSwing Change in high temperature from one day to the next, in
+         *                         degrees Celsius
+         * @param windSpeed        Wind speed, in km/h
+         * @param storms           true to alert on storm condition codes
+         */
+        public Thresholds(double temperatureSwing, double windSpeed, boolean storms) {
+            mTemperatureSwing = temperatureSwing;
+            mWindSpeed = windSpeed;
+            mStorms = storms;
+        }
+
+        /**
+         * @return the thresholds chosen in the settings, or null if alerts or notifications
+         * are turned off
+         */
+        static Thresholds fromPreferences(Context context) {
+            if (!SettingsSnapshot.get(context).notificationsEnabled()) {
+                return null;
+            }
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            boolean enabled = prefs.getBoolean(context.getString(R.string.pref_alerts_enabled_key),
+                    Boolean.parseBoolean(context.getString(R.string.pref_alerts_enabled_default)));
+            if (!enabled) {
+                return null;
+            }
+            return new Thresholds(
+                    Double.parseDouble(prefs.getString(
+                            context.getString(R.string.pref_alert_temperature_swing_key),
+                            context.getString(R.string.pref_alert_temperature_swing_default))),
+                    Double.parseDouble(prefs.getString(
+                            context.getString(R.string.pref_alert_wind_key),
+                            context.getString(R.string.pref_alert_wind_default))),
+                    prefs.getBoolean(context.getString(R.string.pref_alert_storms_key),
+                            Boolean.parseBoolean(
+                                    context.getString(R.string.pref_alert_storms_default))));
+        }
+    }
+
+    /**
+     * The first day in the forecast that breaks a rule.
+     */
+    public static final class Alert {
+        final int mRule;
+        final long mDate;
+        final ContentValues mDay;
+        final double mValue;
+
+        Alert(int rule, long date, ContentValues day, double value) {
+            mRule = rule;
+            mDate = date;
+            mDay = day;
+            mValue = value;
+        }
+
+        public int getRule() {
+            return mRule;
+        }
+
+        public long getDate() {
+            return mDate;
+        }
+
+        /**
+         * @return the measured value that broke the rule: the signed change in high
+         * temperature, the wind speed as stored in the forecast, or the condition id
+         */
+        public double getValue() {
+            return mValue;
+        }
+    }
+
+    /**
+     * Checks a forecast against the thresholds, without looking at what has already been
+     * alerted.
+     *
+     * @param days The forecast, one {@link WeatherEntry} row per day starting today
+     * @return the alerts indexed by rule, with null for the rules that weren't broken
+     */
+    public static Alert[] evaluate(ContentValues[] days, Thresholds thresholds) {
+        Alert[] alerts = new Alert[RULE_COUNT];
+        int count = Math.min(days.length, LOOKAHEAD_DAYS);
+        for (int i = 0; i < count; i++) {
+            ContentValues day = days[i];
+            long date = day.getAsLong(WeatherEntry.COLUMN_DATE);
+
+            if (alerts[RULE_TEMPERATURE_SWING] == null && thresholds.mTemperatureSwing > 0
+                    && i > 0) {
+                double change = day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP)
+                        - days[i - 1].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+                if (Math.abs(change) >= thresholds.mTemperatureSwing) {
+                    alerts[RULE_TEMPERATURE_SWING] =
+                            new Alert(RULE_TEMPERATURE_SWING, date, day, change);
+                }
+            }
+
+            if (alerts[RULE_WIND] == null && thresholds.mWindSpeed > 0) {
+                double windSpeed = day.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+                if (windSpeed * KMH_PER_METER_PER_SECOND >= thresholds.mWindSpeed) {
+                    alerts[RULE_WIND] = new Alert(RULE_WIND, date, day, windSpeed);
+                }
+            }
+
+            if (alerts[RULE_STORM] == null && thresholds.mStorms) {
+                int weatherId = day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+                if (isStorm(weatherId)) {
+                    alerts[RULE_STORM] = new Alert(RULE_STORM, date, day, weatherId);
+                }
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * @return true if the OpenWeatherMap condition id is a thunderstorm, tornado, tropical
+     * storm, hurricane, hail or a gale or stronger wind
+     */
+    static boolean isStorm(int weatherId) {
+        return (weatherId >= 200 && weatherId <= 232)
+                || weatherId == 781
+                || (weatherId >= 900 && weatherId <= 902)
+                || weatherId == 906
+                || (weatherId >= 958 && weatherId <= 962);
+    }
+
+    /**
+     * Records that the alert is being raised for the location.
+     *
+     * @return false if the same rule already alerted for this location and day
+     */
+    static boolean markAlerted(SharedPreferences state, String locationSetting, Alert alert) {
+        String key = "rule_" + alert.mRule;
+        String value = locationSetting + "|" + alert.mDate;
+        if (value.equals(state.getString(key, null))) {
+            return false;
+        }
+        state.edit().putString(key, value).apply();
+        return true;
+    }
+
+    /**
+     * Checks a newly synced forecast and notifies for each rule that it breaks, unless that
+     * rule already alerted for the same location and day.  Nothing is checked unless both
+     * alerts and weather notifications are turned on.
+     *
+     * @param locationSetting The location the forecast is for
+     * @param cityName        The name to show for the location
+     * @param days            The forecast, one {@link WeatherEntry} row per day starting today
+     */
+    static void evaluateAndNotify(Context context, String locationSetting, String cityName,
+                                  ContentValues[] days) {
+        Thresholds thresholds = Thresholds.fromPreferences(context);
+        if (thresholds == null) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        Alert[] alerts = evaluate(days, thresholds);
+        SharedPreferences state = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int raised = 0;
+        for (Alert alert : alerts) {
+            if (alert != null && markAlerted(state, locationSetting, alert)) {
+                notify(context, cityName, alert);
+                raised++;
+            }
+        }
+        Log.d(LOG_TAG, "Evaluated alerts for " + locationSetting + " in "
+                + (SystemClock.elapsedRealtime() - start) + "ms, raised " + raised);
+    }
+
+    private static void notify(Context context, String cityName, Alert alert) {
+        String day = Utility.getDayName(context, alert.mDate);
+        String text;
+        switch (alert.mRule) {
+            case RULE_TEMPERATURE_SWING:
+                text = context.getString(alert.mValue > 0
+                                ? R.string.alert_temperature_rise : R.string.alert_temperature_drop,
+                        cityName, day, Utility.formatTemperature(context,
+                                alert.mDay.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP)));
+                break;
+            case RULE_WIND:
+                text = context.getString(R.string.alert_wind, cityName, day,
+                        Utility.getFormattedWind(context, (float) alert.mValue,
+                                alert.mDay.getAsFloat(WeatherEntry.COLUMN_DEGREES)));
+                break;
+            default:
+                text = context.getString(R.string.alert_storm, cityName, day,
+                        WeatherCondition.forId((int) alert.mValue).getDescription(context));
+                break;
+        }
+
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), 0);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setColor(context.getResources().getColor(R.color.primary_light))
+                .setSmallIcon(R.drawable.ic_storm)
+                .setContentTitle(context.getString(R.string.alert_title))
+                .setContentText(text)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true)
+                .setContentIntent(contentIntent);
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        // One notification per rule, so a newer alert replaces an older one of the same kind.
+        notificationManager.notify(ALERT_NOTIFICATION_ID + alert.mRule, builder.build());
+    }
+}
@@ -26,6 +26,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -34,21 +35,40 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
 public class TodayWidgetIntentService extends IntentService {
+    /**
+     * Boolean extra asking for every widget to be updated, even if it should already show the
+     * current data.  Used when the launcher asks for an update, since it may have lost them.
+     */
+    public static final String EXTRA_FORCE_UPDATE =
+            "com.example.android.sunshine.app.widget.extra.FORCE_UPDATE";
+
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
     };
     // these indices must match the projection
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_LOCATION_SETTING = 4;
+
+    // Hash of what was last sent to each widget, by widget id.  Only touched on the worker
+    // thread, and starts empty in a new process so that everything gets sent at least once.
+    private static final SparseIntArray sPushedHashes = new SparseIntArray();
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -61,36 +81,51 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        // Each widget can show its own location, so get today's data for all of them at once
+        String[] widgetLocations = new String[appWidgetIds.length];
+        Set<String> locations = new HashSet<String>();
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            widgetLocations[i] = WidgetLocationStore.getLocation(this, appWidgetIds[i]);
+            locations.add(widgetLocations[i]);
+        }
+        Uri weatherForLocationsUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationsWithStartDate(locations, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationsUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
         if (data == null) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
-            return;
+        // The first row of each location is today
+        Map<String, TodayForecast> forecasts = new HashMap<String, TodayForecast>();
+        while (data.moveToNext()) {
+            String location = data.getString(INDEX_LOCATION_SETTING);
+            if (!forecasts.containsKey(location)) {
+                forecasts.put(location, new TodayForecast(data));
+            }
         }
-
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
+        boolean forceUpdate = intent.getBooleanExtra(EXTRA_FORCE_UPDATE, false);
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        // Widgets of the same size and location share one RemoteViews, built when first needed
+        Map<String, RemoteViews> sharedViews = new HashMap<String, RemoteViews>();
+
         // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            int appWidgetId = appWidgetIds[i];
+            TodayForecast forecast = forecasts.get(widgetLocations[i]);
+            if (forecast == null) {
+                // Nothing synced for this location yet
+                continue;
+            }
+
             // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,28 +134,46 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+            // Skip widgets that already show exactly this
+            int renderHash = 31 * forecast.mHash + layoutId;
+            if (!forceUpdate && sPushedHashes.get(appWidgetId) == renderHash) {
+                continue;
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+            String viewsKey = layoutId + "/" + widgetLocations[i];
+            RemoteViews views = sharedViews.get(viewsKey);
+            if (views == null) {
+                views = buildViews(layoutId, forecast);
+                sharedViews.put(viewsKey, views);
+            }
 
             // Tell the AppWidgetManager to perform an update on the current app widget
             appWidgetManager.updateAppWidget(appWidgetId, views);
+            sPushedHashes.put(appWidgetId, renderHash);
         }
     }
 
+    private RemoteViews buildViews(int layoutId, TodayForecast forecast) {
+        RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, forecast.mWeatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, forecast.mDescription);
+        }
+        views.setTextViewText(R.id.widget_description, forecast.mDescription);
+        views.setTextViewText(R.id.widget_high_temperature, forecast.mFormattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, forecast.mFormattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
@@ -148,4 +201,27 @@ public class TodayWidgetIntentService extends IntentService {
     private void setRemoteContentDescription(RemoteViews views, String description) {
         views.setContentDescription(R.id.widget_icon, description);
     }
+
+    /**
+     * Today's forecast for one location, formatted for display.
+     */
+    private class TodayForecast {
+        final int mWeatherArtResourceId;
+        final String mDescription;
+        final String mFormattedMaxTemperature;
+        final String mFormattedMinTemperature;
+        final int mHash;
+
+        TodayForecast(Cursor data) {
+            mWeatherArtResourceId =
+                    Utility.getArtResourceForWeatherCondition(data.getInt(INDEX_WEATHER_ID));
+            mDescription = data.getString(INDEX_SHORT_DESC);
+            mFormattedMaxTemperature = Utility.formatTemperature(TodayWidgetIntentService.this,
+                    data.getDouble(INDEX_MAX_TEMP));
+            mFormattedMinTemperature = Utility.formatTemperature(TodayWidgetIntentService.this,
+                    data.getDouble(INDEX_MIN_TEMP));
+            mHash = Arrays.hashCode(new Object[]{mWeatherArtResourceId, mDescription,
+                    mFormattedMaxTemperature, mFormattedMinTemperature});
+        }
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherCondition;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Weather art for the widget lists, decoded at the size of the list icon rather than at the
+ * size of the source image.
+ * <p>
+ * Each bitmap is sent to the launcher inside a {@link android.widget.RemoteViews}, so keeping
+ * them small saves memory on both sides of the binder, and since a forecast only shows a few
+ * distinct conditions most rows are served from memory.
+ */
+public final class WidgetArtCache {
+    private static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    // Enough for every condition at list icon size on an xxxhdpi screen.
+    private static final int MAX_SIZE_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getRowBytes() * bitmap.getHeight();
+                }
+            };
+
+    private WidgetArtCache() {
+    }
+
+    /**
+     * @return the size in pixels that widget list art is decoded at
+     */
+    public static int getListIconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * Returns the art at the given URL scaled to fit a square of the given size, downloading
+     * and decoding it on a miss.  Must not be called on the UI thread.
+     *
+     * @return the art, or null if it couldn't be loaded
+     */
+    public static Bitmap getArt(Context context, String artUrl, int sizePx) {
+        if (artUrl == null) {
+            return null;
+        }
+        String key = sizePx + ":" + artUrl;
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        FutureTarget<Bitmap> target = Glide.with(context)
+                .load(artUrl)
+                .asBitmap()
+                .fitCenter()
+                .into(sizePx, sizePx);
+        try {
+            Bitmap loaded = target.get();
+            // Clearing the target hands Glide's bitmap back to its pool, so keep a copy.
+            bitmap = loaded.copy(loaded.getConfig() != null
+                    ? loaded.getConfig() : Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving widget art from " + artUrl, e);
+            return null;
+        } finally {
+            Glide.clear(target);
+        }
+        if (bitmap != null) {
+            sCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Loads the art for every condition in the upcoming forecast, so that the detail widget
+     * doesn't have to download it while the launcher waits.  Does nothing if there's no
+     * detail widget or the art is bundled with the app.  Must not be called on the UI thread.
+     */
+    public static void prefetch(Context context) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, DetailWidgetProvider.class));
+        if (appWidgetIds.length == 0 || Utility.usingLocalGraphics(context)) {
+            return;
+        }
+
+        Set<String> locations = new HashSet<String>();
+        for (int appWidgetId : appWidgetIds) {
+            locations.add(WidgetLocationStore.getLocation(context, appWidgetId));
+        }
+        Uri weatherForLocationsUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationsWithStartDate(locations, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherForLocationsUri,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+                null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        int sizePx = getListIconSize(context);
+        try {
+            while (cursor.moveToNext()) {
+                String artUrl = WeatherCondition.forId(cursor.getInt(0)).getArtUrl(context);
+                getArt(context, artUrl, sizePx);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.widget.SimpleCursorAdapter;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * Lets the user pick the location a newly placed widget shows: the app's location, one that
+ * Sunshine already has weather for, or a new one.
+ */
+public class WidgetConfigureActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    private static final int LOCATIONS_LOADER = 0;
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+    // these indices must match the projection
+    private static final int INDEX_LOCATION_SETTING = 2;
+
+    private int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+    private SimpleCursorAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // If the user backs out, the widget isn't added
+        setResult(RESULT_CANCELED);
+
+        Bundle extras = getIntent().getExtras();
+        if (extras != null) {
+            mAppWidgetId = extras.getInt(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID);
+        }
+        if (mAppWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            finish();
+            return;
+        }
+
+        setContentView(R.layout.activity_widget_configure);
+
+        ListView listView = (ListView) findViewById(R.id.widget_configure_list);
+        TextView appLocationView = (TextView) getLayoutInflater().inflate(
+                android.R.layout.simple_list_item_1, listView, false);
+        appLocationView.setText(getString(R.string.widget_configure_app_location,
+                Utility.getPreferredLocation(this)));
+        listView.addHeaderView(appLocationView);
+
+        mAdapter = new SimpleCursorAdapter(this, android.R.layout.simple_list_item_2, null,
+                new String[]{WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                new int[]{android.R.id.text1, android.R.id.text2}, 0);
+        listView.setAdapter(mAdapter);
+        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                if (position == 0) {
+                    // Follow the app's location
+                    finishWithLocation(null, false);
+                } else {
+                    Cursor cursor = (Cursor) parent.getItemAtPosition(position);
+                    finishWithLocation(cursor.getString(INDEX_LOCATION_SETTING), false);
+                }
+            }
+        });
+
+        final EditText locationEdit = (EditText) findViewById(R.id.widget_configure_location);
+        findViewById(R.id.widget_configure_add).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                String location = locationEdit.getText().toString().trim();
+                if (!TextUtils.isEmpty(location)) {
+                    finishWithLocation(location, true);
+                }
+            }
+        });
+
+        getSupportLoaderManager().initLoader(LOCATIONS_LOADER, null, this);
+    }
+
+    private void finishWithLocation(String location, boolean isNewLocation) {
+        WidgetLocationStore.setLocation(this, mAppWidgetId, location);
+
+        // Widgets added with a configure activity don't get an initial update, so ask for one
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        AppWidgetProviderInfo info = appWidgetManager.getAppWidgetInfo(mAppWidgetId);
+        if (info != null) {
+            ComponentName detailProvider = new ComponentName(this, DetailWidgetProvider.class);
+            if (detailProvider.equals(info.provider)
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                new DetailWidgetProvider().onUpdate(this, appWidgetManager,
+                        new int[]{mAppWidgetId});
+                appWidgetManager.notifyAppWidgetViewDataChanged(mAppWidgetId, R.id.widget_list);
+            } else {
+                startService(new Intent(this, TodayWidgetIntentService.class)
+                        .putExtra(TodayWidgetIntentService.EXTRA_FORCE_UPDATE, true));
+            }
+        }
+        if (isNewLocation) {
+            // There's no weather for it yet
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+
+        setResult(RESULT_OK, new Intent()
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, mAppWidgetId));
+        finish();
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new CursorLoader(this,
+                WeatherContract.LocationEntry.CONTENT_URI,
+                LOCATION_COLUMNS,
+                null,
+                null,
+                WeatherContract.LocationEntry.COLUMN_CITY_NAME + " ASC");
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null);
+    }
+}
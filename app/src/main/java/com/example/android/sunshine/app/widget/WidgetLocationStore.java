@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The location chosen for each widget in {@link WidgetConfigureActivity}.  Widgets without a
+ * location of their own follow the location set in the app.
+ */
+public final class WidgetLocationStore {
+    private static final String PREFS_NAME = "widget_locations";
+    private static final String KEY_PREFIX = "location_";
+
+    private WidgetLocationStore() {
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the location chosen for the widget, or null if it follows the app's location
+     */
+    public static String getChosenLocation(Context context, int appWidgetId) {
+        return getPrefs(context).getString(KEY_PREFIX + appWidgetId, null);
+    }
+
+    /**
+     * @return the location the widget should show
+     */
+    public static String getLocation(Context context, int appWidgetId) {
+        String location = getChosenLocation(context, appWidgetId);
+        return location != null ? location : Utility.getPreferredLocation(context);
+    }
+
+    /**
+     * @param location The location to show, or null to follow the app's location
+     */
+    public static void setLocation(Context context, int appWidgetId, String location) {
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        if (location == null) {
+            editor.remove(KEY_PREFIX + appWidgetId);
+        } else {
+            editor.putString(KEY_PREFIX + appWidgetId, location);
+        }
+        editor.apply();
+    }
+
+    public static void removeLocations(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(KEY_PREFIX + appWidgetId);
+        }
+        editor.apply();
+    }
+
+    /**
+     * @return every location chosen for an installed widget that differs from the app's
+     * location, and so needs syncing on its own
+     */
+    public static Set<String> getExtraLocations(Context context) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        String preferredLocation = Utility.getPreferredLocation(context);
+        Set<String> locations = new LinkedHashSet<String>();
+        addChosenLocations(context, appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, TodayWidgetProvider.class)), locations);
+        addChosenLocations(context, appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, DetailWidgetProvider.class)), locations);
+        locations.remove(preferredLocation);
+        return locations;
+    }
+
+    private static void addChosenLocations(Context context, int[] appWidgetIds,
+                                           Set<String> locations) {
+        for (int appWidgetId : appWidgetIds) {
+            String location = getChosenLocation(context, appWidgetId);
+            if (location != null) {
+                locations.add(location);
+            }
+        }
+    }
+}